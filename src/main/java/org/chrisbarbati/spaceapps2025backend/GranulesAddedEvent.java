@@ -0,0 +1,10 @@
+package org.chrisbarbati.spaceapps2025backend;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Published by {@link PythonScheduler} after a download run that left new granule files in the TEMPO data
+ * directory.
+ */
+public record GranulesAddedEvent(List<Path> granules) {}
@@ -0,0 +1,9 @@
+package org.chrisbarbati.spaceapps2025backend;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Published after expired granule files have been deleted, so anything derived from them can be dropped.
+ */
+public record GranulesRemovedEvent(List<Path> granules) {}
@@ -1,6 +1,9 @@
 package org.chrisbarbati.spaceapps2025backend;
 
+import jakarta.annotation.PreDestroy;
 import org.slf4j.*;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
@@ -12,8 +15,16 @@ import java.io.InputStreamReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.time.Duration;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Component
 public class PythonScheduler {
@@ -21,9 +32,24 @@ public class PythonScheduler {
     //Logging
     private static final Logger logger = LoggerFactory.getLogger(PythonScheduler.class);
 
+    //Injected dependencies
+    private final ApplicationEventPublisher eventPublisher;
+
     private final Path pythonScriptPath;
+    private final Duration timeout;
+
+    // Runs block for minutes, so they go to their own thread and a run still in progress makes the next one skip
+    private final ExecutorService ingestExecutor = Executors.newSingleThreadExecutor();
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    // Probed on the first run and reused until the interpreter fails to start
+    private volatile String pythonExecutable;
+
+    public PythonScheduler(ApplicationEventPublisher eventPublisher,
+                           @Value("${ingest.python.timeout}") Duration timeout) throws IOException {
+        this.eventPublisher = eventPublisher;
+        this.timeout = timeout;
 
-    public PythonScheduler() throws IOException {
         // Create a temporary working directory to hold the Python script + .env
         Path tempDir = Files.createTempDirectory("python_runner_");
 
@@ -53,43 +79,111 @@ public class PythonScheduler {
         logger.info("Working directory for Python process: {}", tempDir);
     }
 
+    @PreDestroy
+    public void shutdown() {
+        // Interrupts a run in progress, which kills its downloader process
+        ingestExecutor.shutdownNow();
+    }
+
     @Scheduled(cron = "0 */10 * * * *")
     public void runPythonScript() {
+        if (!running.compareAndSet(false, true)) {
+            logger.warn("Previous Python run still in progress, skipping this one");
+            return;
+        }
+
+        ingestExecutor.execute(() -> {
+            try {
+                ingest();
+            } finally {
+                running.set(false);
+            }
+        });
+    }
+
+    private void ingest() {
         try {
-            String pythonExe = detectPythonExecutable();
+            Set<Path> before = listGranules();
+
+            String pythonExe = getPythonExecutable();
             logger.info("Executing Python script using {}", pythonExe);
             logger.info("Python script path: {}", pythonScriptPath);
 
             ProcessBuilder pb = new ProcessBuilder(pythonExe, pythonScriptPath.getFileName().toString());
             pb.directory(pythonScriptPath.getParent().toFile()); // set working dir
 
-            Process process = pb.start();
+            Process process;
+            try {
+                process = pb.start();
+            } catch (IOException e) {
+                // The interpreter may have moved; probe again next run
+                pythonExecutable = null;
+                throw e;
+            }
 
-            // Start threads to handle stdout and stderr separately
-            Thread stdoutReader = new Thread(() ->
+            // Start virtual threads to handle stdout and stderr separately
+            Thread stdoutReader = Thread.ofVirtual().start(() ->
                     readStream(process.getInputStream(), line -> logger.info("[Python] {}", line)));
-            Thread stderrReader = new Thread(() ->
+            Thread stderrReader = Thread.ofVirtual().start(() ->
                     readStream(process.getErrorStream(), line -> logger.error("[Python-ERR] {}", line)));
 
-            stdoutReader.start();
-            stderrReader.start();
-
-            int exitCode = process.waitFor();
+            try {
+                if (!process.waitFor(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                    logger.warn("Python script did not finish within {}, killing it", timeout);
+                    process.destroyForcibly().waitFor();
+                }
+            } catch (InterruptedException e) {
+                // Shutting down; don't leave the downloader running on its own
+                process.destroyForcibly();
+                throw e;
+            }
 
             stdoutReader.join();
             stderrReader.join();
 
+            int exitCode = process.exitValue();
             if (exitCode == 0) {
                 logger.info("Python script completed successfully (exit code = 0)");
             } else {
                 logger.warn("Python script exited with non-zero code: {}", exitCode);
             }
 
+            // Even a failed or killed run may have finished some downloads, so always diff the directory
+            List<Path> added = listGranules().stream()
+                    .filter(path -> !before.contains(path))
+                    .sorted()
+                    .toList();
+
+            if (!added.isEmpty()) {
+                logger.info("Python run added {} granules", added.size());
+                eventPublisher.publishEvent(new GranulesAddedEvent(added));
+            }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Interrupted while executing Python script", e);
         } catch (Exception e) {
             logger.error("Error while executing Python script", e);
         }
     }
 
+    /**
+     * Complete granules in the download directory; files the downloader is still rewriting are left out.
+     */
+    private Set<Path> listGranules() throws IOException {
+        Path dir = getTempoDataDir();
+        if (!Files.isDirectory(dir)) {
+            return Set.of();
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            return files
+                    .filter(Files::isRegularFile)
+                    .filter(path -> path.toString().endsWith(".nc"))
+                    .filter(path -> !path.getFileName().toString().contains("_temp_shortened"))
+                    .collect(Collectors.toSet());
+        }
+    }
+
     private void readStream(InputStream stream, Consumer<String> logLine) {
         try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream))) {
             String line;
@@ -101,6 +195,15 @@ public class PythonScheduler {
         }
     }
 
+    private String getPythonExecutable() {
+        String executable = pythonExecutable;
+        if (executable == null) {
+            executable = detectPythonExecutable();
+            pythonExecutable = executable;
+        }
+        return executable;
+    }
+
     private String detectPythonExecutable() {
         List<String> candidates = List.of("python3", "python");
 
@@ -119,4 +222,11 @@ public class PythonScheduler {
     public Path getPythonScriptPath() {
         return pythonScriptPath;
     }
+
+    /**
+     * Directory the downloader writes granules to.
+     */
+    public Path getTempoDataDir() {
+        return pythonScriptPath.getParent().resolve("tempo_data");
+    }
 }
@@ -0,0 +1,32 @@
+package org.chrisbarbati.spaceapps2025backend;
+
+import org.chrisbarbati.spaceapps2025backend.levelthreedata.LevelThreeWarmUpService;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Out of service until the level three warm-up has finished, which waits for the first ingest when the node starts
+ * without granules, so load balancers only route traffic to warm nodes.
+ * Exposed as {@code warmUp} in {@code /actuator/health} and the readiness group.
+ */
+@Component("warmUp")
+public class WarmUpHealthIndicator implements HealthIndicator {
+
+    //Injected dependencies
+    private final LevelThreeWarmUpService levelThreeWarmUpService;
+
+    public WarmUpHealthIndicator(LevelThreeWarmUpService levelThreeWarmUpService) {
+        this.levelThreeWarmUpService = levelThreeWarmUpService;
+    }
+
+    @Override
+    public Health health() {
+        Health.Builder builder = levelThreeWarmUpService.isWarm() ? Health.up() : Health.outOfService();
+        return builder
+                .withDetail("warmedGranules", levelThreeWarmUpService.warmedGranules())
+                .withDetail("warmUpMillis", levelThreeWarmUpService.warmUpMillis())
+                .build();
+    }
+
+}
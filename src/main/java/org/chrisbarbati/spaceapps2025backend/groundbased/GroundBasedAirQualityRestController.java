@@ -1,13 +1,23 @@
 package org.chrisbarbati.spaceapps2025backend.groundbased;
 
 import org.chrisbarbati.spaceapps2025backend.groundbased.apiresponse.AirQualityResponse;
+import org.chrisbarbati.spaceapps2025backend.groundbased.batch.BatchAirQualityResult;
+import org.chrisbarbati.spaceapps2025backend.groundbased.batch.BatchCoordinate;
 import org.chrisbarbati.spaceapps2025backend.groundbased.service.GroundBasedAirQualityService;
 import org.slf4j.*;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api/ground-based-air-quality")
@@ -17,31 +27,48 @@ public class GroundBasedAirQualityRestController {
     private static final Logger logger = LoggerFactory.getLogger(GroundBasedAirQualityRestController.class);
 
     private final GroundBasedAirQualityService groundBasedAirQualityService;
+    private final int batchMaxSize;
 
-    public GroundBasedAirQualityRestController(GroundBasedAirQualityService groundBasedAirQualityService) {
+    public GroundBasedAirQualityRestController(
+            GroundBasedAirQualityService groundBasedAirQualityService,
+            @Value("${groundbased.batch.max-size}") int batchMaxSize) {
         this.groundBasedAirQualityService = groundBasedAirQualityService;
+        this.batchMaxSize = batchMaxSize;
     }
 
     @GetMapping("/retrieve")
-    public ResponseEntity<AirQualityResponse> retrieve(
+    public CompletableFuture<ResponseEntity<AirQualityResponse>> retrieve(
             @RequestParam("lat") float lat,
             @RequestParam("lon") float lon
     ){
-
-        AirQualityResponse airQualityResponse = groundBasedAirQualityService.getAirQuality(lat, lon);
-
-        return ResponseEntity.ok(airQualityResponse);
+        // Completes off the request thread so a slow upstream doesn't hold a Tomcat worker
+        return groundBasedAirQualityService.getAirQualityAsync(lat, lon)
+                .thenApply(ResponseEntity::ok);
     }
 
     @GetMapping("/retrieveForecast")
-    public ResponseEntity<AirQualityResponse> retrieveForecast(
+    public CompletableFuture<ResponseEntity<AirQualityResponse>> retrieveForecast(
             @RequestParam("lat") float lat,
             @RequestParam("lon") float lon
     ){
+        return groundBasedAirQualityService.getAirQualityForecastAsync(lat, lon)
+                .thenApply(ResponseEntity::ok);
+    }
+
+    @PostMapping("/retrieveBatch")
+    public CompletableFuture<ResponseEntity<List<BatchAirQualityResult>>> retrieveBatch(
+            @RequestBody List<BatchCoordinate> coordinates,
+            @RequestParam(value = "forecast", defaultValue = "false") boolean forecast
+    ){
+        logger.info("Retrieving air quality for batch of {} coordinates", coordinates.size());
 
-        AirQualityResponse airQualityResponse = groundBasedAirQualityService.getAirQualityForecast(lat, lon);
+        if (coordinates.size() > batchMaxSize) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Batch size " + coordinates.size() + " exceeds the limit of " + batchMaxSize);
+        }
 
-        return ResponseEntity.ok(airQualityResponse);
+        return groundBasedAirQualityService.getAirQualityBatch(coordinates, forecast)
+                .thenApply(ResponseEntity::ok);
     }
 
 }
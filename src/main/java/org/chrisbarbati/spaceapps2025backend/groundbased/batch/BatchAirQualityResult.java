@@ -0,0 +1,14 @@
+package org.chrisbarbati.spaceapps2025backend.groundbased.batch;
+
+import org.chrisbarbati.spaceapps2025backend.groundbased.apiresponse.AirQualityResponse;
+
+/**
+ * One entry of a batch lookup. Exactly one of {@code response} or {@code error} is set.
+ */
+public record BatchAirQualityResult(
+        double lat,
+        double lon,
+        AirQualityResponse response,
+        String error
+) {
+}
@@ -0,0 +1,4 @@
+package org.chrisbarbati.spaceapps2025backend.groundbased.batch;
+
+public record BatchCoordinate(double lat, double lon) {
+}
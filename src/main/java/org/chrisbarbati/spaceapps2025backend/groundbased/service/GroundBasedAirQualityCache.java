@@ -0,0 +1,167 @@
+package org.chrisbarbati.spaceapps2025backend.groundbased.service;
+
+import org.slf4j.*;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+
+/**
+ * Caches upstream responses on a lat/lon grid.
+ * <p>
+ * Coordinates are snapped to a cell of {@code gridDegrees} and the loader is called with the cell centre, so
+ * nearby requests share one upstream call. Concurrent misses for the same cell wait on a single in-flight load,
+ * and entries past their TTL but still inside the stale window are served immediately while a background
+ * refresh runs. Once the cache holds {@code maxEntries} cells, the least recently used one is evicted.
+ */
+public class GroundBasedAirQualityCache<V> {
+
+    //Logging
+    private static final Logger logger = LoggerFactory.getLogger(GroundBasedAirQualityCache.class);
+
+    private final String name;
+    private final double gridDegrees;
+    private final long ttlNanos;
+    private final long staleNanos;
+    private final int maxEntries;
+    private final Function<GridCell, V> loader;
+    private final Executor executor;
+
+    // Access ordered, so the eldest entry is the least recently used; guarded by its own monitor
+    private final LinkedHashMap<GridCell, CacheEntry<V>> entries;
+    private final Map<GridCell, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    public GroundBasedAirQualityCache(String name, double gridDegrees, Duration ttl, Duration stale, int maxEntries,
+                                      Function<GridCell, V> loader, Executor executor) {
+        if (gridDegrees <= 0) {
+            throw new IllegalArgumentException("Grid size must be positive: " + gridDegrees);
+        }
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Max entries must be at least 1: " + maxEntries);
+        }
+        this.name = name;
+        this.gridDegrees = gridDegrees;
+        this.ttlNanos = ttl.toNanos();
+        this.staleNanos = stale.toNanos();
+        this.maxEntries = maxEntries;
+        this.loader = loader;
+        this.executor = executor;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<GridCell, CacheEntry<V>> eldest) {
+                return size() > GroundBasedAirQualityCache.this.maxEntries;
+            }
+        };
+    }
+
+    public V get(double lat, double lon) {
+        try {
+            return getAsync(lat, lon).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
+
+    public CompletableFuture<V> getAsync(double lat, double lon) {
+        GridCell cell = cellFor(lat, lon);
+        CacheEntry<V> entry;
+        synchronized (entries) {
+            entry = entries.get(cell);
+        }
+        long now = System.nanoTime();
+
+        if (entry != null) {
+            if (now - entry.loadedAt() < ttlNanos) {
+                logger.trace("{} cache hit for cell {}", name, cell);
+                return CompletableFuture.completedFuture(entry.value());
+            }
+            if (now - entry.loadedAt() < ttlNanos + staleNanos) {
+                logger.trace("{} cache serving stale value for cell {} while revalidating", name, cell);
+                load(cell);
+                return CompletableFuture.completedFuture(entry.value());
+            }
+        }
+
+        logger.trace("{} cache miss for cell {}", name, cell);
+        return load(cell);
+    }
+
+    GridCell cellFor(double lat, double lon) {
+        return new GridCell((long) Math.floor(lat / gridDegrees), (long) Math.floor(lon / gridDegrees), gridDegrees);
+    }
+
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private CompletableFuture<V> load(GridCell cell) {
+        CompletableFuture<V> existing = inFlight.get(cell);
+        if (existing != null) {
+            return existing;
+        }
+
+        CompletableFuture<V> future = new CompletableFuture<>();
+        existing = inFlight.putIfAbsent(cell, future);
+        if (existing != null) {
+            return existing;
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    V value = loader.apply(cell);
+                    if (value != null) {
+                        store(cell, value);
+                    }
+                    future.complete(value);
+                } catch (Throwable t) {
+                    logger.warn("{} cache load failed for cell {}: {}", name, cell, t.getMessage());
+                    future.completeExceptionally(t);
+                } finally {
+                    inFlight.remove(cell, future);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(cell, future);
+            future.completeExceptionally(e);
+        }
+
+        return future;
+    }
+
+    private void store(GridCell cell, V value) {
+        synchronized (entries) {
+            // Evicts the least recently used cell if this one takes the cache over maxEntries
+            entries.put(cell, new CacheEntry<>(value, System.nanoTime()));
+        }
+    }
+
+    public record GridCell(long latIndex, long lonIndex, double gridDegrees) {
+
+        public double centerLat() {
+            return round((latIndex + 0.5) * gridDegrees);
+        }
+
+        public double centerLon() {
+            return round((lonIndex + 0.5) * gridDegrees);
+        }
+
+        private static double round(double value) {
+            return Math.round(value * 1_000_000d) / 1_000_000d;
+        }
+    }
+
+    private record CacheEntry<V>(V value, long loadedAt) {}
+
+}
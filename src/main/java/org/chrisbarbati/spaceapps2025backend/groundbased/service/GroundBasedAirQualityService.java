@@ -2,15 +2,25 @@ package org.chrisbarbati.spaceapps2025backend.groundbased.service;
 
 import org.chrisbarbati.spaceapps2025backend.groundbased.apiresponse.AirQualityResponse;
 import org.chrisbarbati.spaceapps2025backend.groundbased.apiresponse.AirQualityEntry;
+import org.chrisbarbati.spaceapps2025backend.groundbased.batch.BatchAirQualityResult;
+import org.chrisbarbati.spaceapps2025backend.groundbased.batch.BatchCoordinate;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.*;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.client.RestClient;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.stream.Collectors;
 
 @Service
@@ -20,42 +30,109 @@ public class GroundBasedAirQualityService {
     private static final Logger logger = LoggerFactory.getLogger(GroundBasedAirQualityService.class);
 
     // Injected dependencies
-    private final RestTemplate restTemplate = new RestTemplate();
-    private final String baseUrl;
+    private final RestClient openWeatherRestClient;
     private final String apiKey;
 
+    // Shared by all batches, so concurrent batches together stay within the upstream limit
+    private final Semaphore batchPermits;
+
+    // Responses are cached per grid cell; refreshes run on virtual threads
+    private final ExecutorService cacheExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final GroundBasedAirQualityCache<AirQualityResponse> currentCache;
+    private final GroundBasedAirQualityCache<AirQualityResponse> forecastCache;
+
     public GroundBasedAirQualityService (
-            @Value("${groundbased.openweather.api.url}") String baseUrl,
-            @Value("${groundbased.openweather.api.key}") String apiKey) {
-        this.baseUrl = baseUrl;
+            RestClient openWeatherRestClient,
+            @Value("${groundbased.openweather.api.key}") String apiKey,
+            @Value("${groundbased.cache.grid-degrees}") double gridDegrees,
+            @Value("${groundbased.cache.max-entries}") int maxEntries,
+            @Value("${groundbased.cache.current.ttl}") Duration currentTtl,
+            @Value("${groundbased.cache.current.stale}") Duration currentStale,
+            @Value("${groundbased.cache.forecast.ttl}") Duration forecastTtl,
+            @Value("${groundbased.cache.forecast.stale}") Duration forecastStale,
+            @Value("${groundbased.batch.max-concurrency}") int batchMaxConcurrency) {
+        this.openWeatherRestClient = openWeatherRestClient;
         this.apiKey = apiKey;
+        this.batchPermits = new Semaphore(batchMaxConcurrency, true);
+        this.currentCache = new GroundBasedAirQualityCache<>("Current", gridDegrees, currentTtl, currentStale, maxEntries,
+                cell -> fetchAirQuality(cell.centerLat(), cell.centerLon()), cacheExecutor);
+        this.forecastCache = new GroundBasedAirQualityCache<>("Forecast", gridDegrees, forecastTtl, forecastStale, maxEntries,
+                cell -> fetchAirQualityForecast(cell.centerLat(), cell.centerLon()), cacheExecutor);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Drops background refreshes; a caller still waiting on one fails rather than hanging
+        cacheExecutor.shutdownNow();
     }
 
     public AirQualityResponse getAirQuality(double lat, double lon) {
+        return currentCache.get(lat, lon);
+    }
 
-        StringBuilder urlStringBuilder = new StringBuilder(baseUrl)
-                .append("?lat=")
-                .append(lat)
-                .append("&lon=")
-                .append(lon)
-                .append("&appid=")
-                .append(apiKey);
+    public AirQualityResponse getAirQualityForecast(double lat, double lon) {
+        return forecastCache.get(lat, lon);
+    }
 
-        return restTemplate.getForObject(urlStringBuilder.toString(), AirQualityResponse.class);
+    public CompletableFuture<AirQualityResponse> getAirQualityAsync(double lat, double lon) {
+        return currentCache.getAsync(lat, lon);
+    }
 
+    public CompletableFuture<AirQualityResponse> getAirQualityForecastAsync(double lat, double lon) {
+        return forecastCache.getAsync(lat, lon);
     }
 
-    public AirQualityResponse getAirQualityForecast(double lat, double lon) {
+    /**
+     * Looks up every coordinate concurrently and returns the results in request order. Repeated coordinates are
+     * only looked up once, and a failed lookup is reported on its own entry rather than failing the batch.
+     */
+    public CompletableFuture<List<BatchAirQualityResult>> getAirQualityBatch(List<BatchCoordinate> coordinates, boolean forecast) {
+        logger.debug("Batch lookup of {} coordinates (forecast = {})", coordinates.size(), forecast);
 
-        StringBuilder urlStringBuilder = new StringBuilder("http://api.openweathermap.org/data/2.5/air_pollution/forecast")
-                .append("?lat=")
-                .append(lat)
-                .append("&lon=")
-                .append(lon)
-                .append("&appid=")
-                .append(apiKey);
+        GroundBasedAirQualityCache<AirQualityResponse> cache = forecast ? forecastCache : currentCache;
 
-        AirQualityResponse response = restTemplate.getForObject(urlStringBuilder.toString(), AirQualityResponse.class);
+        Map<BatchCoordinate, CompletableFuture<BatchAirQualityResult>> lookups = new LinkedHashMap<>();
+        for (BatchCoordinate coordinate : coordinates) {
+            lookups.computeIfAbsent(coordinate, c ->
+                    CompletableFuture.supplyAsync(() -> lookup(cache, c), cacheExecutor));
+        }
+
+        List<CompletableFuture<BatchAirQualityResult>> ordered = coordinates.stream()
+                .map(lookups::get)
+                .toList();
+
+        return CompletableFuture.allOf(ordered.toArray(CompletableFuture[]::new))
+                .thenApply(ignored -> ordered.stream().map(CompletableFuture::join).toList());
+    }
+
+    private BatchAirQualityResult lookup(GroundBasedAirQualityCache<AirQualityResponse> cache, BatchCoordinate coordinate) {
+        try {
+            batchPermits.acquire();
+            try {
+                AirQualityResponse response = cache.get(coordinate.lat(), coordinate.lon());
+                return new BatchAirQualityResult(coordinate.lat(), coordinate.lon(), response, null);
+            } finally {
+                batchPermits.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new BatchAirQualityResult(coordinate.lat(), coordinate.lon(), null, "Lookup interrupted");
+        } catch (RuntimeException e) {
+            logger.warn("Batch lookup failed for {}, {}: {}", coordinate.lat(), coordinate.lon(), e.getMessage());
+            return new BatchAirQualityResult(coordinate.lat(), coordinate.lon(), null, e.getMessage());
+        }
+    }
+
+    private AirQualityResponse fetchAirQuality(double lat, double lon) {
+        logger.debug("Fetching current air quality for {}, {}", lat, lon);
+
+        return fetch("", lat, lon);
+    }
+
+    private AirQualityResponse fetchAirQualityForecast(double lat, double lon) {
+        logger.debug("Fetching air quality forecast for {}, {}", lat, lon);
+
+        AirQualityResponse response = fetch("/forecast", lat, lon);
 
         // Filter to only include entries at 12pm (noon) for 5 days
         if (response != null && response.getList() != null) {
@@ -76,4 +153,16 @@ public class GroundBasedAirQualityService {
         return response;
     }
 
+    private AirQualityResponse fetch(String path, double lat, double lon) {
+        return openWeatherRestClient.get()
+                .uri(uriBuilder -> uriBuilder
+                        .path(path)
+                        .queryParam("lat", lat)
+                        .queryParam("lon", lon)
+                        .queryParam("appid", apiKey)
+                        .build())
+                .retrieve()
+                .body(AirQualityResponse.class);
+    }
+
 }
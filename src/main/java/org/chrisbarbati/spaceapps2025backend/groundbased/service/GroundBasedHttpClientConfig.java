@@ -0,0 +1,52 @@
+package org.chrisbarbati.spaceapps2025backend.groundbased.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.web.client.RestClient;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Configuration
+public class GroundBasedHttpClientConfig {
+
+    // Runs the HTTP client's response handling; kept here rather than as a bean so it doesn't replace Spring's
+    // auto-configured task executor
+    private final ExecutorService httpClientExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    @PreDestroy
+    public void shutdown() {
+        httpClientExecutor.shutdownNow();
+    }
+
+    /**
+     * Shared client for OpenWeather. The JDK client keeps a pool of keep-alive connections, so repeated lookups
+     * reuse sockets instead of reconnecting on every request.
+     */
+    @Bean
+    public RestClient openWeatherRestClient(
+            RestClient.Builder builder,
+            @Value("${groundbased.openweather.api.url}") String baseUrl,
+            @Value("${groundbased.http.connect-timeout}") Duration connectTimeout,
+            @Value("${groundbased.http.read-timeout}") Duration readTimeout) {
+
+        HttpClient httpClient = HttpClient.newBuilder()
+                .connectTimeout(connectTimeout)
+                .executor(httpClientExecutor)
+                .build();
+
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(readTimeout);
+
+        return builder
+                .baseUrl(baseUrl)
+                .requestFactory(requestFactory)
+                .build();
+    }
+
+}
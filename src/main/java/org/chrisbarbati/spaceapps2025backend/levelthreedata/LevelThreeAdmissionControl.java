@@ -0,0 +1,217 @@
+package org.chrisbarbati.spaceapps2025backend.levelthreedata;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.*;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Global memory and CPU budget for heavy level three requests. Each request estimates its cost up front from the
+ * grid dimensions, the number of granules and the output size, and holds a reservation for that cost while it runs.
+ * Granules already in the grid cache are not charged for decoding, since that memory is bounded by the cache size.
+ * A request that doesn't fit waits up to {@code max-wait} for others to finish and is then rejected with 429;
+ * one that could never fit is rejected straight away with 400.
+ */
+@Component
+public class LevelThreeAdmissionControl {
+
+    //Logging
+    private static final Logger logger = LoggerFactory.getLogger(LevelThreeAdmissionControl.class);
+
+    // TEMPO L3 grid, used until the first granule has been decoded
+    private static final int DEFAULT_ROWS = 2950;
+    private static final int DEFAULT_COLS = 7750;
+
+    // Decoded grid: double value per cell, plus float uncertainty and byte flag once a quality filter has loaded them
+    private static final int BYTES_PER_DECODED_CELL = 13;
+    // Render in progress: int pixel, double percentile sample and PNG encoder buffers per output pixel
+    private static final int BYTES_PER_RENDERED_PIXEL = 16;
+    // Finished render held until the response is written: base64 PNG, worst case
+    private static final int BYTES_PER_RETAINED_PIXEL = 3;
+
+    private static final int BYTES_PER_PERMIT = 1024;
+    private static final long CELLS_PER_CPU_PERMIT = 1_000_000;
+
+    //Injected dependencies
+    private final LevelThreeGranuleCatalog levelThreeGranuleCatalog;
+    private final LevelThreeGridCache levelThreeGridCache;
+
+    private final Semaphore memory;
+    private final Semaphore cpu;
+    private final int memoryPermits;
+    private final int cpuPermits;
+    private final Duration maxWait;
+
+    private final Counter rejectedBusy;
+    private final Counter rejectedTooLarge;
+
+    public LevelThreeAdmissionControl(
+            LevelThreeGranuleCatalog levelThreeGranuleCatalog,
+            LevelThreeGridCache levelThreeGridCache,
+            MeterRegistry meterRegistry,
+            @Value("${levelthree.admission.memory-budget}") DataSize memoryBudget,
+            @Value("${levelthree.admission.cpu-budget-megacells}") int cpuBudgetMegacells,
+            @Value("${levelthree.admission.max-wait}") Duration maxWait) {
+        this.levelThreeGranuleCatalog = levelThreeGranuleCatalog;
+        this.levelThreeGridCache = levelThreeGridCache;
+        this.memoryPermits = (int) (memoryBudget.toBytes() / BYTES_PER_PERMIT);
+        this.cpuPermits = cpuBudgetMegacells;
+        this.memory = new Semaphore(memoryPermits, true);
+        this.cpu = new Semaphore(cpuPermits, true);
+        this.maxWait = maxWait;
+
+        Gauge.builder("levelthree.admission.memory.budget", () -> (double) memoryPermits * BYTES_PER_PERMIT)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("levelthree.admission.memory.reserved", () -> (double) (memoryPermits - memory.availablePermits()) * BYTES_PER_PERMIT)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("levelthree.admission.cpu.budget", () -> (double) cpuPermits * CELLS_PER_CPU_PERMIT)
+                .baseUnit("cells")
+                .register(meterRegistry);
+        Gauge.builder("levelthree.admission.cpu.reserved", () -> (double) (cpuPermits - cpu.availablePermits()) * CELLS_PER_CPU_PERMIT)
+                .baseUnit("cells")
+                .register(meterRegistry);
+        Gauge.builder("levelthree.admission.queued", () -> (double) memory.getQueueLength() + cpu.getQueueLength())
+                .register(meterRegistry);
+        this.rejectedBusy = Counter.builder("levelthree.admission.rejected").tag("reason", "busy").register(meterRegistry);
+        this.rejectedTooLarge = Counter.builder("levelthree.admission.rejected").tag("reason", "too_large").register(meterRegistry);
+    }
+
+    /**
+     * Held for the duration of an admitted request; closing it returns the cost to the budget.
+     */
+    private final class Reservation implements AutoCloseable {
+
+        private final int memoryCost;
+        private final int cpuCost;
+        private boolean released;
+
+        private Reservation(int memoryCost, int cpuCost) {
+            this.memoryCost = memoryCost;
+            this.cpuCost = cpuCost;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!released) {
+                released = true;
+                memory.release(memoryCost);
+                cpu.release(cpuCost);
+            }
+        }
+    }
+
+    /**
+     * Runs {@code work} once a request that renders {@code granules} granules of {@code pixelsPerGranule} output
+     * pixels each has been admitted, and returns its cost to the budget when it finishes.
+     *
+     * @param decodes how many granules outside the grid cache the request may be decoding at the same time
+     */
+    public <T> T runAdmitted(String operation, int granules, long pixelsPerGranule, int decodes, Supplier<T> work) {
+        Reservation reservation = admit(operation, granules, pixelsPerGranule, decodes);
+        try {
+            return work.get();
+        } finally {
+            reservation.close();
+        }
+    }
+
+    private Reservation admit(String operation, int granules, long pixelsPerGranule, int decodes) {
+        long cells = gridCells();
+        long memoryBytes = decodes * cells * BYTES_PER_DECODED_CELL
+                + pixelsPerGranule * BYTES_PER_RENDERED_PIXEL
+                + granules * pixelsPerGranule * BYTES_PER_RETAINED_PIXEL;
+        // Uncached granules need a decode and tile pass over the whole grid; every granule needs the render pass
+        long cpuCells = (decodes > 0 ? granules * cells : 0) + granules * pixelsPerGranule;
+
+        long memoryCost = (memoryBytes + BYTES_PER_PERMIT - 1) / BYTES_PER_PERMIT;
+        long cpuCost = Math.max(1, (cpuCells + CELLS_PER_CPU_PERMIT - 1) / CELLS_PER_CPU_PERMIT);
+
+        if (memoryCost > memoryPermits || cpuCost > cpuPermits) {
+            rejectedTooLarge.increment();
+            logger.warn("Rejecting {}: estimated {} MB and {} Mcells exceed the budget", operation, memoryBytes >> 20, cpuCost);
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Request is too large (estimated " + (memoryBytes >> 20)
+                    + " MB); reduce n or increase scaleFactor");
+        }
+
+        try {
+            long deadline = System.nanoTime() + maxWait.toNanos();
+            if (memory.tryAcquire((int) memoryCost, maxWait.toNanos(), TimeUnit.NANOSECONDS)) {
+                if (cpu.tryAcquire((int) cpuCost, Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                    logger.debug("Admitted {}: {} MB, {} Mcells", operation, memoryBytes >> 20, cpuCost);
+                    return new Reservation((int) memoryCost, (int) cpuCost);
+                }
+                memory.release((int) memoryCost);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        rejectedBusy.increment();
+        logger.warn("Rejecting {}: budget still exhausted after {}", operation, maxWait);
+        throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Server is busy with other level three requests, try again shortly");
+    }
+
+    /**
+     * Decodes needed by a request for the newest {@code n} granules, which are read one at a time: 1 if any of them
+     * is not in the grid cache, otherwise 0.
+     */
+    public int decodesForLatest(int n) {
+        try {
+            return levelThreeGranuleCatalog.getTempoFiles().stream()
+                    .limit(n)
+                    .allMatch(levelThreeGridCache::isCached) ? 0 : 1;
+        } catch (IOException e) {
+            return 1;
+        }
+    }
+
+    /**
+     * Output pixels for the whole grid sampled every {@code scaleFactor} cells.
+     */
+    public long fullPixels(int scaleFactor) {
+        int step = Math.max(1, scaleFactor);
+        long rows = (gridRows() + step - 1) / step;
+        long cols = (gridCols() + step - 1) / step;
+        return rows * cols;
+    }
+
+    /**
+     * Output pixels for a bounding box at full resolution.
+     */
+    public long regionPixels(LevelThreeBoundingBox box) {
+        LevelThreeGridCache.GridAxes axes = levelThreeGridCache.gridAxes();
+        if (axes == null) {
+            return (long) DEFAULT_ROWS * DEFAULT_COLS;
+        }
+        return (long) LevelThreeGrid.rangeOf(axes.lats(), box.lat1(), box.lat2()).count()
+                * LevelThreeGrid.rangeOf(axes.lons(), box.lon1(), box.lon2()).count();
+    }
+
+    private long gridCells() {
+        return (long) gridRows() * gridCols();
+    }
+
+    private int gridRows() {
+        LevelThreeGridCache.GridAxes axes = levelThreeGridCache.gridAxes();
+        return axes != null ? axes.lats().length : DEFAULT_ROWS;
+    }
+
+    private int gridCols() {
+        LevelThreeGridCache.GridAxes axes = levelThreeGridCache.gridAxes();
+        return axes != null ? axes.lons().length : DEFAULT_COLS;
+    }
+
+}
@@ -0,0 +1,266 @@
+package org.chrisbarbati.spaceapps2025backend.levelthreedata;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.chrisbarbati.spaceapps2025backend.GranulesRemovedEvent;
+import org.slf4j.*;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed store of rendered results on disk, shared by every replica that points at the same directory.
+ * <p>
+ * An artifact lives at {@code <dir>/<granuleId>/<sha256>.json}, the hash covering the artifact kind and its
+ * parameters, so any replica that renders the same granule the same way finds it. Files are written to a temporary
+ * name and renamed into place, so readers never see a partial artifact. Reads refresh the modification time, and a
+ * periodic sweep deletes the least recently used artifacts once the directory exceeds {@code max-size}. The sweep
+ * walks the whole directory, so it runs on its own thread rather than Spring's shared scheduler.
+ */
+@Component
+public class LevelThreeArtifactCache {
+
+    //Logging
+    private static final Logger logger = LoggerFactory.getLogger(LevelThreeArtifactCache.class);
+
+    // Bump when the rendering changes so old artifacts stop matching
+    private static final int FORMAT_VERSION = 2;
+
+    private static final String SUFFIX = ".json";
+    private static final Duration STALE_TEMP_AGE = Duration.ofHours(1);
+    private static final Duration FIRST_SWEEP_DELAY = Duration.ofMinutes(1);
+
+    //Injected dependencies
+    private final ObjectMapper objectMapper;
+
+    private final boolean enabled;
+    private final Path dir;
+    private final long maxSizeBytes;
+    private final Duration sweepInterval;
+
+    private final ScheduledExecutorService sweepExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    @FunctionalInterface
+    public interface ArtifactLoader<T> {
+        T load() throws IOException;
+    }
+
+    public LevelThreeArtifactCache(
+            ObjectMapper objectMapper,
+            @Value("${levelthree.artifact-cache.enabled}") boolean enabled,
+            @Value("${levelthree.artifact-cache.dir}") Path dir,
+            @Value("${levelthree.artifact-cache.max-size}") DataSize maxSize,
+            @Value("${levelthree.artifact-cache.sweep-interval}") Duration sweepInterval) {
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.dir = dir;
+        this.maxSizeBytes = maxSize.toBytes();
+        this.sweepInterval = sweepInterval;
+    }
+
+    /**
+     * Returns the stored artifact for {@code granuleId}, {@code kind} and {@code params}, or computes and stores it.
+     * Storage problems are logged and never fail the request.
+     *
+     * @param params any value Jackson can serialise; equal parameters must serialise identically
+     */
+    public <T> T getOrCompute(String granuleId, String kind, Object params, Class<T> type, ArtifactLoader<T> loader) throws IOException {
+        if (!enabled) {
+            return loader.load();
+        }
+
+        Path file;
+        try {
+            file = fileFor(granuleId, kind, params);
+        } catch (JsonProcessingException e) {
+            logger.warn("Cannot key {} artifact for {}: {}", kind, granuleId, e.getMessage());
+            return loader.load();
+        }
+
+        T cached = read(file, type);
+        if (cached != null) {
+            logger.debug("Artifact cache hit: {} {} for {}", kind, file.getFileName(), granuleId);
+            return cached;
+        }
+
+        T value = loader.load();
+        write(file, value);
+        return value;
+    }
+
+    @EventListener
+    public void onGranulesRemoved(GranulesRemovedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        for (Path granule : event.granules()) {
+            Path granuleDir = dir.resolve(LevelThreeGranuleCatalog.granuleIdOf(granule.toString()));
+            try {
+                deleteDirectory(granuleDir);
+            } catch (IOException e) {
+                logger.warn("Failed to delete artifacts in {}: {}", granuleDir, e.getMessage());
+            }
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!enabled) {
+            return;
+        }
+        sweepExecutor.scheduleWithFixedDelay(() -> {
+            // An exception would cancel every later sweep
+            try {
+                sweep();
+            } catch (RuntimeException e) {
+                logger.error("Artifact cache sweep failed: {}", e.getMessage(), e);
+            }
+        }, FIRST_SWEEP_DELAY.toMillis(), sweepInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweepExecutor.shutdownNow();
+    }
+
+    public void sweep() {
+        if (!enabled || !Files.isDirectory(dir)) {
+            return;
+        }
+
+        record Artifact(Path path, long size, FileTime lastUsed) {}
+
+        List<Artifact> artifacts = new ArrayList<>();
+        long total = 0;
+        Instant staleTempCutoff = Instant.now().minus(STALE_TEMP_AGE);
+
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path path : files.filter(Files::isRegularFile).toList()) {
+                try {
+                    FileTime lastUsed = Files.getLastModifiedTime(path);
+                    if (!path.getFileName().toString().endsWith(SUFFIX)) {
+                        // Left behind by a writer that died before renaming
+                        if (lastUsed.toInstant().isBefore(staleTempCutoff)) {
+                            Files.deleteIfExists(path);
+                        }
+                        continue;
+                    }
+                    long size = Files.size(path);
+                    artifacts.add(new Artifact(path, size, lastUsed));
+                    total += size;
+                } catch (IOException e) {
+                    // Removed by another replica in the meantime
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to scan artifact cache {}: {}", dir, e.getMessage());
+            return;
+        }
+
+        if (total <= maxSizeBytes) {
+            return;
+        }
+
+        // Evict down to 90% so a sweep isn't needed after every write
+        long target = maxSizeBytes / 10 * 9;
+        artifacts.sort(Comparator.comparing(Artifact::lastUsed));
+
+        int evicted = 0;
+        long reclaimed = 0;
+        for (Artifact artifact : artifacts) {
+            if (total - reclaimed <= target) {
+                break;
+            }
+            try {
+                if (Files.deleteIfExists(artifact.path())) {
+                    evicted++;
+                    reclaimed += artifact.size();
+                }
+            } catch (IOException e) {
+                logger.warn("Failed to evict artifact {}: {}", artifact.path(), e.getMessage());
+            }
+        }
+
+        logger.info("Artifact cache sweep: evicted {} artifacts ({} MB), {} MB remain", evicted, reclaimed >> 20, (total - reclaimed) >> 20);
+    }
+
+    private Path fileFor(String granuleId, String kind, Object params) throws JsonProcessingException {
+        String key = FORMAT_VERSION + ":" + kind + ":" + objectMapper.writeValueAsString(params);
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            return dir.resolve(granuleId).resolve(HexFormat.of().formatHex(digest) + SUFFIX);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private <T> T read(Path file, Class<T> type) {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            T value = objectMapper.readValue(file.toFile(), type);
+            // Mark as recently used for the LRU sweep
+            Files.setLastModifiedTime(file, FileTime.from(Instant.now()));
+            return value;
+        } catch (IOException e) {
+            // Evicted under us, or unreadable; either way render it again
+            logger.debug("Failed to read artifact {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    private void write(Path file, Object value) {
+        Path temp = file.resolveSibling(file.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        try {
+            Files.createDirectories(file.getParent());
+            objectMapper.writeValue(temp.toFile(), value);
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to store artifact {}: {}", file, e.getMessage());
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {}
+        }
+    }
+
+    private static void deleteDirectory(Path path) throws IOException {
+        if (!Files.isDirectory(path)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(path)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+}
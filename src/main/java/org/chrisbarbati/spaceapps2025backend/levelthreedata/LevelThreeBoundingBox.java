@@ -0,0 +1,4 @@
+package org.chrisbarbati.spaceapps2025backend.levelthreedata;
+
+public record LevelThreeBoundingBox(float lat1, float lat2, float lon1, float lon2) {
+}
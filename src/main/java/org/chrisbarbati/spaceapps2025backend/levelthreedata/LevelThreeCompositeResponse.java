@@ -0,0 +1,24 @@
+package org.chrisbarbati.spaceapps2025backend.levelthreedata;
+
+import java.time.Instant;
+
+/**
+ * Mean NO2 over a rolling window. The bounding box fields are null for full-grid composites, and
+ * {@code scaleFactor} is null for bounding box composites.
+ */
+public record LevelThreeCompositeResponse(
+        Instant generatedAtInstant,
+        Integer windowHours,
+        Integer granuleCount,
+        Instant newestGranuleInstant,
+        Float lat1,
+        Float lat2,
+        Float lon1,
+        Float lon2,
+        Integer scaleFactor,
+        Double minNO2,
+        Double maxNO2,
+        Double centerNO2,
+        String imagePng
+) {
+}
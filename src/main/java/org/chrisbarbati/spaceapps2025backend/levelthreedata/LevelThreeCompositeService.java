@@ -0,0 +1,130 @@
+package org.chrisbarbati.spaceapps2025backend.levelthreedata;
+
+import org.chrisbarbati.spaceapps2025backend.GranulesAddedEvent;
+import org.chrisbarbati.spaceapps2025backend.GranulesRemovedEvent;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.*;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps one {@link LevelThreeRollingComposite} per configured window up to date with the granule catalog and
+ * checkpoints each to local disk after it changes, so a restart resumes from the checkpoint instead of re-reading
+ * every granule in the window. Updates run once at startup and then whenever new granules are ingested.
+ */
+@Service
+public class LevelThreeCompositeService {
+
+    //Logging
+    private static final Logger logger = LoggerFactory.getLogger(LevelThreeCompositeService.class);
+
+    //Injected dependencies
+    private final LevelThreeGranuleCatalog levelThreeGranuleCatalog;
+    private final LevelThreeGridCache levelThreeGridCache;
+
+    private final boolean enabled;
+    private final Path checkpointDir;
+    private final Map<Integer, LevelThreeRollingComposite> composites = new TreeMap<>();
+
+    // Updates read whole granules, so they run off the publishing thread and never pile up
+    private final ExecutorService updateExecutor = Executors.newSingleThreadExecutor();
+    private final AtomicBoolean updateQueued = new AtomicBoolean(false);
+    private volatile boolean restored = false;
+
+    public LevelThreeCompositeService(
+            LevelThreeGranuleCatalog levelThreeGranuleCatalog,
+            LevelThreeGridCache levelThreeGridCache,
+            @Value("${levelthree.composite.enabled}") boolean enabled,
+            @Value("${levelthree.composite.window-hours}") List<Integer> windowHours,
+            @Value("${levelthree.composite.checkpoint-dir}") Path checkpointDir,
+            @Value("${levelthree.percentile.sketch-bins}") int sketchBins) {
+        this.levelThreeGranuleCatalog = levelThreeGranuleCatalog;
+        this.levelThreeGridCache = levelThreeGridCache;
+        this.enabled = enabled;
+        this.checkpointDir = checkpointDir;
+        for (Integer hours : windowHours) {
+            composites.put(hours, new LevelThreeRollingComposite(hours, sketchBins));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Checkpoints are only written after a complete update, so interrupting one leaves the last good checkpoint
+        updateExecutor.shutdownNow();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        scheduleUpdate();
+    }
+
+    @EventListener
+    public void onGranulesAdded(GranulesAddedEvent event) {
+        scheduleUpdate();
+    }
+
+    @EventListener
+    public void onGranulesRemoved(GranulesRemovedEvent event) {
+        scheduleUpdate();
+    }
+
+    private void scheduleUpdate() {
+        if (enabled && updateQueued.compareAndSet(false, true)) {
+            updateExecutor.execute(() -> {
+                updateQueued.set(false);
+                update();
+            });
+        }
+    }
+
+    /**
+     * @return the latest snapshot of the composite for the given window, or null if it has no data yet
+     */
+    public LevelThreeRollingComposite.Snapshot snapshot(int windowHours) {
+        LevelThreeRollingComposite composite = composites.get(windowHours);
+        if (composite == null) {
+            throw new IllegalArgumentException("No composite configured for a " + windowHours + "h window; available: " + composites.keySet());
+        }
+        return composite.snapshot();
+    }
+
+    private void update() {
+        try {
+            if (!restored) {
+                Files.createDirectories(checkpointDir);
+                for (LevelThreeRollingComposite composite : composites.values()) {
+                    composite.restore(checkpointFile(composite));
+                }
+                restored = true;
+            }
+
+            List<String> tempoFiles = levelThreeGranuleCatalog.getTempoFiles();
+
+            // Window granules go around the grid cache, which only has room for the few grids requests are using
+            for (LevelThreeRollingComposite composite : composites.values()) {
+                if (composite.update(tempoFiles, levelThreeGridCache::getWithoutCaching)) {
+                    composite.checkpoint(checkpointFile(composite));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.error("Failed to update level three composites: {}", e.getMessage(), e);
+        }
+    }
+
+    private Path checkpointFile(LevelThreeRollingComposite composite) {
+        return checkpointDir.resolve("composite-" + composite.windowHours() + "h.bin");
+    }
+
+}
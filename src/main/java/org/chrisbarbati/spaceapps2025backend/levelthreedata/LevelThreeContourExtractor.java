@@ -0,0 +1,286 @@
+package org.chrisbarbati.spaceapps2025backend.levelthreedata;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Marching-squares isolines over a grid sampled every {@code step} cells.
+ * <p>
+ * Cell rows are processed in parallel, each emitting segments between crossed cell edges. Edges are identified by
+ * their lattice position, so segments from neighbouring cells are joined into polylines by exact edge ID rather
+ * than by comparing floating-point coordinates. Polylines are then simplified with Douglas-Peucker. Cells with a
+ * fill corner produce no segments, so lines stop at data gaps.
+ */
+final class LevelThreeContourExtractor {
+
+    // Edge pairs per case; corners are bit 0 = bottom-left, 1 = bottom-right, 2 = top-right, 3 = top-left
+    private static final int BOTTOM = 0;
+    private static final int RIGHT = 1;
+    private static final int TOP = 2;
+    private static final int LEFT = 3;
+
+    private static final int[][] SEGMENTS = {
+            {},
+            {LEFT, BOTTOM},
+            {BOTTOM, RIGHT},
+            {LEFT, RIGHT},
+            {RIGHT, TOP},
+            {},                 // saddle, resolved from the cell centre
+            {BOTTOM, TOP},
+            {LEFT, TOP},
+            {LEFT, TOP},
+            {BOTTOM, TOP},
+            {},                 // saddle, resolved from the cell centre
+            {RIGHT, TOP},
+            {LEFT, RIGHT},
+            {BOTTOM, RIGHT},
+            {LEFT, BOTTOM},
+            {}
+    };
+
+    // Saddle resolutions: cut off the bottom-right and top-left corners, or the bottom-left and top-right ones
+    private static final int[] SADDLE_CUT_BR_TL = {BOTTOM, RIGHT, LEFT, TOP};
+    private static final int[] SADDLE_CUT_BL_TR = {LEFT, BOTTOM, RIGHT, TOP};
+
+    private final LevelThreeGrid grid;
+    private final int step;
+    private final int height;
+    private final int width;
+
+    LevelThreeContourExtractor(LevelThreeGrid grid, int step) {
+        this.grid = grid;
+        this.step = step;
+        this.height = (grid.rows() + step - 1) / step;
+        this.width = (grid.cols() + step - 1) / step;
+    }
+
+    /**
+     * @return polylines as arrays of {@code [lon, lat]} points
+     */
+    List<double[][]> extract(double threshold, double tolerance) {
+        // 1. Segments per cell row, in parallel
+        long[][] rowSegments = new long[Math.max(height - 1, 0)][];
+        IntStream.range(0, height - 1).parallel().forEach(r -> rowSegments[r] = segmentsForRow(r, threshold));
+
+        int total = 0;
+        for (long[] segments : rowSegments) {
+            total += segments.length;
+        }
+        long[] segments = new long[total];
+        int offset = 0;
+        for (long[] row : rowSegments) {
+            System.arraycopy(row, 0, segments, offset, row.length);
+            offset += row.length;
+        }
+
+        // 2. Join segments sharing an edge into polylines
+        List<double[][]> lines = new ArrayList<>();
+        for (long[] edges : stitch(segments)) {
+            double[][] points = new double[edges.length][];
+            for (int p = 0; p < edges.length; p++) {
+                points[p] = pointOnEdge(edges[p], threshold);
+            }
+            // 3. Simplify
+            lines.add(simplify(points, tolerance));
+        }
+        return lines;
+    }
+
+    private long[] segmentsForRow(int r, double threshold) {
+        long[] out = new long[16];
+        int size = 0;
+
+        for (int c = 0; c < width - 1; c++) {
+            double bl = sample(r, c);
+            double br = sample(r, c + 1);
+            double tr = sample(r + 1, c + 1);
+            double tl = sample(r + 1, c);
+            if (!LevelThreeGrid.isValid(bl) || !LevelThreeGrid.isValid(br)
+                    || !LevelThreeGrid.isValid(tr) || !LevelThreeGrid.isValid(tl)) {
+                continue;
+            }
+
+            int cell = (bl >= threshold ? 1 : 0) | (br >= threshold ? 2 : 0) | (tr >= threshold ? 4 : 0) | (tl >= threshold ? 8 : 0);
+
+            int[] edges = SEGMENTS[cell];
+            if (cell == 5 || cell == 10) {
+                boolean centerHigh = (bl + br + tr + tl) / 4 >= threshold;
+                edges = (cell == 5) == centerHigh ? SADDLE_CUT_BR_TL : SADDLE_CUT_BL_TR;
+            }
+
+            for (int e = 0; e < edges.length; e++) {
+                if (size == out.length) {
+                    out = Arrays.copyOf(out, size * 2);
+                }
+                out[size++] = edgeId(r, c, edges[e]);
+            }
+        }
+
+        return Arrays.copyOf(out, size);
+    }
+
+    private List<long[]> stitch(long[] segments) {
+        int count = segments.length / 2;
+
+        // Every edge is shared by at most two cells, hence at most two segments
+        Map<Long, int[]> segmentsByEdge = new HashMap<>(count * 2);
+        for (int s = 0; s < count; s++) {
+            for (int end = 0; end < 2; end++) {
+                int[] slots = segmentsByEdge.computeIfAbsent(segments[2 * s + end], k -> new int[] {-1, -1});
+                slots[slots[0] == -1 ? 0 : 1] = s;
+            }
+        }
+
+        boolean[] visited = new boolean[count];
+        List<long[]> lines = new ArrayList<>();
+
+        for (int s = 0; s < count; s++) {
+            if (visited[s]) {
+                continue;
+            }
+            visited[s] = true;
+
+            Deque<Long> line = new ArrayDeque<>();
+            line.add(segments[2 * s]);
+            line.add(segments[2 * s + 1]);
+
+            extend(line, false, segments, segmentsByEdge, visited);
+            extend(line, true, segments, segmentsByEdge, visited);
+
+            lines.add(line.stream().mapToLong(Long::longValue).toArray());
+        }
+
+        return lines;
+    }
+
+    private void extend(Deque<Long> line, boolean atFront, long[] segments, Map<Long, int[]> segmentsByEdge, boolean[] visited) {
+        while (true) {
+            long edge = atFront ? line.peekFirst() : line.peekLast();
+            int next = -1;
+            for (int candidate : segmentsByEdge.get(edge)) {
+                if (candidate != -1 && !visited[candidate]) {
+                    next = candidate;
+                    break;
+                }
+            }
+            if (next == -1) {
+                return;
+            }
+            visited[next] = true;
+            long other = segments[2 * next] == edge ? segments[2 * next + 1] : segments[2 * next];
+            if (atFront) {
+                line.addFirst(other);
+            } else {
+                line.addLast(other);
+            }
+        }
+    }
+
+    /**
+     * Horizontal edges run from (r, c) to (r, c + 1) and get even IDs; vertical edges run from (r, c) to (r + 1, c)
+     * and get odd IDs.
+     */
+    private long edgeId(int r, int c, int edge) {
+        return switch (edge) {
+            case BOTTOM -> ((long) r * width + c) * 2;
+            case TOP -> ((long) (r + 1) * width + c) * 2;
+            case LEFT -> ((long) r * width + c) * 2 + 1;
+            default -> ((long) r * width + c + 1) * 2 + 1;
+        };
+    }
+
+    private double[] pointOnEdge(long edgeId, double threshold) {
+        long base = edgeId / 2;
+        int r = (int) (base / width);
+        int c = (int) (base % width);
+
+        boolean horizontal = edgeId % 2 == 0;
+        int r1 = horizontal ? r : r + 1;
+        int c1 = horizontal ? c + 1 : c;
+
+        double v0 = sample(r, c);
+        double v1 = sample(r1, c1);
+        double t = v1 == v0 ? 0.5 : (threshold - v0) / (v1 - v0);
+
+        double lon0 = grid.lons()[c * step];
+        double lat0 = grid.lats()[r * step];
+        double lon = lon0 + t * (grid.lons()[c1 * step] - lon0);
+        double lat = lat0 + t * (grid.lats()[r1 * step] - lat0);
+
+        return new double[] {round(lon), round(lat)};
+    }
+
+    private double sample(int r, int c) {
+        return grid.value(r * step, c * step);
+    }
+
+    /**
+     * Iterative Douglas-Peucker; keeps the endpoints and every point further than {@code tolerance} degrees from the
+     * simplified line.
+     */
+    static double[][] simplify(double[][] points, double tolerance) {
+        if (points.length < 3 || tolerance <= 0) {
+            return points;
+        }
+
+        boolean[] keep = new boolean[points.length];
+        keep[0] = true;
+        keep[points.length - 1] = true;
+
+        Deque<int[]> ranges = new ArrayDeque<>();
+        ranges.push(new int[] {0, points.length - 1});
+
+        while (!ranges.isEmpty()) {
+            int[] range = ranges.pop();
+            int first = range[0];
+            int last = range[1];
+
+            double maxDistance = -1;
+            int farthest = -1;
+            for (int p = first + 1; p < last; p++) {
+                double distance = distanceToSegment(points[p], points[first], points[last]);
+                if (distance > maxDistance) {
+                    maxDistance = distance;
+                    farthest = p;
+                }
+            }
+
+            if (farthest != -1 && maxDistance > tolerance) {
+                keep[farthest] = true;
+                ranges.push(new int[] {first, farthest});
+                ranges.push(new int[] {farthest, last});
+            }
+        }
+
+        List<double[]> kept = new ArrayList<>();
+        for (int p = 0; p < points.length; p++) {
+            if (keep[p]) {
+                kept.add(points[p]);
+            }
+        }
+        return kept.toArray(double[][]::new);
+    }
+
+    private static double distanceToSegment(double[] p, double[] a, double[] b) {
+        double dx = b[0] - a[0];
+        double dy = b[1] - a[1];
+        double lengthSquared = dx * dx + dy * dy;
+        if (lengthSquared == 0) {
+            return Math.hypot(p[0] - a[0], p[1] - a[1]);
+        }
+        double t = Math.max(0, Math.min(1, ((p[0] - a[0]) * dx + (p[1] - a[1]) * dy) / lengthSquared));
+        return Math.hypot(p[0] - (a[0] + t * dx), p[1] - (a[1] + t * dy));
+    }
+
+    // Four decimals is ~11 m, well below the ~2 km grid spacing, and keeps the GeoJSON compact
+    private static double round(double degrees) {
+        return Math.round(degrees * 10_000d) / 10_000d;
+    }
+
+}
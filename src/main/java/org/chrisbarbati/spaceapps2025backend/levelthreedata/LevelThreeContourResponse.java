@@ -0,0 +1,23 @@
+package org.chrisbarbati.spaceapps2025backend.levelthreedata;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * GeoJSON FeatureCollection with one MultiLineString feature per threshold. {@code granuleInstant} and
+ * {@code scaleFactor} are GeoJSON foreign members; coordinates are {@code [lon, lat]}.
+ */
+public record LevelThreeContourResponse(
+        String type,
+        Instant granuleInstant,
+        int scaleFactor,
+        List<Feature> features
+) {
+
+    public record Feature(String type, Properties properties, Geometry geometry) {}
+
+    public record Properties(double threshold, int lineCount) {}
+
+    public record Geometry(String type, List<double[][]> coordinates) {}
+
+}
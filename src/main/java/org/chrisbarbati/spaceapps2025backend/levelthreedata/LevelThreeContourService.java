@@ -0,0 +1,136 @@
+package org.chrisbarbati.spaceapps2025backend.levelthreedata;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.chrisbarbati.spaceapps2025backend.GranulesRemovedEvent;
+import org.slf4j.*;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+
+@Service
+public class LevelThreeContourService {
+
+    //Logging
+    private static final Logger logger = LoggerFactory.getLogger(LevelThreeContourService.class);
+
+    //Injected dependencies
+    private final LevelThreeGranuleCatalog levelThreeGranuleCatalog;
+    private final LevelThreeGridCache levelThreeGridCache;
+    private final LevelThreeArtifactCache levelThreeArtifactCache;
+
+    private final int maxThresholds;
+
+    // Keyed by granule and the normalised request, so repeated map loads skip the extraction entirely
+    private final Cache<ContourKey, LevelThreeContourResponse> contours;
+
+    private record ContourKey(String granuleId, List<Double> thresholds, int scaleFactor, double tolerance) {}
+
+    public LevelThreeContourService(
+            LevelThreeGranuleCatalog levelThreeGranuleCatalog,
+            LevelThreeGridCache levelThreeGridCache,
+            LevelThreeArtifactCache levelThreeArtifactCache,
+            @Value("${levelthree.contours.max-thresholds}") int maxThresholds,
+            @Value("${levelthree.contours.cache-size}") int cacheSize) {
+        this.levelThreeGranuleCatalog = levelThreeGranuleCatalog;
+        this.levelThreeGridCache = levelThreeGridCache;
+        this.levelThreeArtifactCache = levelThreeArtifactCache;
+        this.maxThresholds = maxThresholds;
+        this.contours = CacheBuilder.newBuilder()
+                .maximumSize(cacheSize)
+                .build();
+    }
+
+    /**
+     * Extracts NO2 isolines at each threshold from one granule, sampled every {@code scaleFactor} cells and
+     * simplified to within {@code tolerance} degrees. The granule is only decoded if neither this node's cache nor
+     * the shared artifact cache already holds the result.
+     *
+     * @param timestamp the granule to contour, or null for the latest
+     */
+    public LevelThreeContourResponse retrieveContours(String timestamp, List<Double> thresholds, int scaleFactor, double tolerance) {
+        if (thresholds.isEmpty() || thresholds.size() > maxThresholds) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Between 1 and " + maxThresholds + " thresholds are required");
+        }
+        if (scaleFactor < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "scaleFactor must be at least 1");
+        }
+
+        String path = findGranule(timestamp);
+        List<Double> sortedThresholds = thresholds.stream().distinct().sorted().toList();
+        ContourKey key = new ContourKey(LevelThreeGranuleCatalog.granuleIdOf(path), sortedThresholds, scaleFactor, tolerance);
+
+        try {
+            return contours.get(key, () -> levelThreeArtifactCache.getOrCompute(key.granuleId(), "contours", key,
+                    LevelThreeContourResponse.class, () -> extract(levelThreeGridCache.get(path), key)));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            logger.error("IO Exception when attempting to load granule for contours: {}", e.getCause().getMessage());
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    @EventListener
+    public void onGranulesRemoved(GranulesRemovedEvent event) {
+        Set<String> removed = event.granules().stream()
+                .map(path -> LevelThreeGranuleCatalog.granuleIdOf(path.toString()))
+                .collect(Collectors.toSet());
+        contours.asMap().keySet().removeIf(key -> removed.contains(key.granuleId()));
+    }
+
+    private LevelThreeContourResponse extract(LevelThreeGrid grid, ContourKey key) {
+        long start = System.currentTimeMillis();
+
+        LevelThreeContourExtractor extractor = new LevelThreeContourExtractor(grid, key.scaleFactor());
+
+        // Thresholds are independent, and each one is also parallel across cell rows
+        List<LevelThreeContourResponse.Feature> features = key.thresholds().parallelStream()
+                .map(threshold -> {
+                    List<double[][]> lines = extractor.extract(threshold, key.tolerance());
+                    return new LevelThreeContourResponse.Feature(
+                            "Feature",
+                            new LevelThreeContourResponse.Properties(threshold, lines.size()),
+                            new LevelThreeContourResponse.Geometry("MultiLineString", lines));
+                })
+                .toList();
+
+        logger.debug("Extracted contours for {} at {} thresholds in {} ms",
+                grid.granuleId(), key.thresholds().size(), System.currentTimeMillis() - start);
+
+        return new LevelThreeContourResponse(
+                "FeatureCollection",
+                LevelThreeGranuleCatalog.granuleTime(grid.granuleId()),
+                key.scaleFactor(),
+                features
+        );
+    }
+
+    private String findGranule(String timestamp) {
+        try {
+            if (timestamp == null) {
+                List<String> tempoFiles = levelThreeGranuleCatalog.getTempoFiles();
+                if (tempoFiles.isEmpty()) {
+                    throw new RuntimeException("No tempo files found");
+                }
+                return tempoFiles.get(0);
+            }
+            return levelThreeGranuleCatalog.findByTimestamp(timestamp)
+                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "No granule found for " + timestamp));
+        } catch (IOException e) {
+            logger.error("IO Exception when attempting to find granule for contours: {}", e.getMessage());
+            throw new RuntimeException(e);
+        }
+    }
+
+}
@@ -0,0 +1,34 @@
+package org.chrisbarbati.spaceapps2025backend.levelthreedata;
+
+import java.time.Instant;
+
+/**
+ * Per-cell change from the {@code from} granule to the {@code to} granule. {@code scaleDelta} is the 95th percentile
+ * of the absolute change and maps to full colour on the diverging scale. The bounding box fields are null for
+ * full-grid differences.
+ */
+public record LevelThreeDifferenceResponse(
+        Instant generatedAtInstant,
+        Instant fromGranuleInstant,
+        Instant toGranuleInstant,
+        Float lat1,
+        Float lat2,
+        Float lon1,
+        Float lon2,
+        Integer scaleFactor,
+        Integer validCells,
+        Double minDelta,
+        Double maxDelta,
+        Double meanDelta,
+        Double scaleDelta,
+        String imagePng
+) {
+
+    /**
+     * The cached payload is shared across requests and replicas, so the generation time is stamped per response.
+     */
+    public LevelThreeDifferenceResponse withGeneratedAt(Instant generatedAt) {
+        return new LevelThreeDifferenceResponse(generatedAt, fromGranuleInstant, toGranuleInstant, lat1, lat2, lon1, lon2,
+                scaleFactor, validCells, minDelta, maxDelta, meanDelta, scaleDelta, imagePng);
+    }
+}
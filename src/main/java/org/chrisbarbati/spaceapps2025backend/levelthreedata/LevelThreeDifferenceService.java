@@ -0,0 +1,218 @@
+package org.chrisbarbati.spaceapps2025backend.levelthreedata;
+
+import org.slf4j.*;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+@Service
+public class LevelThreeDifferenceService {
+
+    //Logging
+    private static final Logger logger = LoggerFactory.getLogger(LevelThreeDifferenceService.class);
+
+    //Injected dependencies
+    private final LevelThreeGranuleCatalog levelThreeGranuleCatalog;
+    private final LevelThreeGridCache levelThreeGridCache;
+    private final LevelThreeArtifactCache levelThreeArtifactCache;
+
+    // Stored under the to granule; scaleFactor is normalised to 1 for bounding box requests
+    private record DifferenceParams(String fromGranuleId, LevelThreeBoundingBox box, int scaleFactor) {}
+
+    public LevelThreeDifferenceService(LevelThreeGranuleCatalog levelThreeGranuleCatalog, LevelThreeGridCache levelThreeGridCache,
+                                       LevelThreeArtifactCache levelThreeArtifactCache) {
+        this.levelThreeGranuleCatalog = levelThreeGranuleCatalog;
+        this.levelThreeGridCache = levelThreeGridCache;
+        this.levelThreeArtifactCache = levelThreeArtifactCache;
+    }
+
+    /**
+     * Computes {@code to - from} for every cell of the window in one parallel pass and renders it on a diverging
+     * blue-white-red scale. Cells that are fill in either granule stay transparent and are left out of the stats.
+     *
+     * Results are shared through the artifact cache, so neither granule is decoded if a replica has already
+     * computed the same difference.
+     *
+     * @param box the region to compare, or null for the whole grid sampled every {@code scaleFactor} cells
+     */
+    public LevelThreeDifferenceResponse retrieveDifference(String fromTimestamp, String toTimestamp, LevelThreeBoundingBox box, int scaleFactor) {
+        logger.info("Retrieving Level Three difference from {} to {}", fromTimestamp, toTimestamp);
+
+        if (scaleFactor < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "scaleFactor must be at least 1");
+        }
+
+        String fromPath = findGranule(fromTimestamp);
+        String toPath = findGranule(toTimestamp);
+        DifferenceParams params = new DifferenceParams(LevelThreeGranuleCatalog.granuleIdOf(fromPath), box, box != null ? 1 : scaleFactor);
+
+        try {
+            LevelThreeDifferenceResponse difference = levelThreeArtifactCache.getOrCompute(LevelThreeGranuleCatalog.granuleIdOf(toPath),
+                    "difference", params, LevelThreeDifferenceResponse.class,
+                    () -> computeDifference(levelThreeGridCache.get(fromPath), levelThreeGridCache.get(toPath), box, scaleFactor));
+            return difference.withGeneratedAt(Instant.now());
+        } catch (IOException e) {
+            logger.error("IO Exception when attempting to compute difference from {} to {}: {}", fromTimestamp, toTimestamp, e.getMessage());
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return the difference without a generation time, which is set per response rather than cached
+     */
+    private LevelThreeDifferenceResponse computeDifference(LevelThreeGrid from, LevelThreeGrid to, LevelThreeBoundingBox box, int scaleFactor) {
+        long start = System.currentTimeMillis();
+
+        if (from.rows() != to.rows() || from.cols() != to.cols()) {
+            throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY, "Granules " + from.granuleId() + " and "
+                    + to.granuleId() + " are on different grids");
+        }
+
+        LevelThreeGrid.IndexRange rowRange;
+        LevelThreeGrid.IndexRange colRange;
+        int step;
+
+        if (box != null) {
+            rowRange = LevelThreeGrid.rangeOf(from.lats(), box.lat1(), box.lat2());
+            colRange = LevelThreeGrid.rangeOf(from.lons(), box.lon1(), box.lon2());
+            step = 1;
+            if (rowRange.isEmpty() || colRange.isEmpty()) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Bounding box " + box + " does not contain any grid cells");
+            }
+        } else {
+            rowRange = new LevelThreeGrid.IndexRange(0, from.rows());
+            colRange = new LevelThreeGrid.IndexRange(0, from.cols());
+            step = scaleFactor;
+        }
+
+        int height = (rowRange.count() + step - 1) / step;
+        int width = (colRange.count() + step - 1) / step;
+        int cols = from.cols();
+        double[] fromValues = from.values();
+        double[] toValues = to.values();
+
+        // One pass: deltas (NaN where either side is fill) plus per-row min/max/sum/count
+        double[] deltas = new double[width * height];
+        double[] rowMin = new double[height];
+        double[] rowMax = new double[height];
+        double[] rowSum = new double[height];
+        int[] rowCount = new int[height];
+
+        IntStream.range(0, height).parallel().forEach(y -> {
+            int i = rowRange.first() + y * step;
+            int rowOffset = i * cols;
+            int outOffset = (height - 1 - y) * width;
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            double sum = 0;
+            int count = 0;
+            for (int x = 0; x < width; x++) {
+                int k = rowOffset + colRange.first() + x * step;
+                double a = fromValues[k];
+                double b = toValues[k];
+                if (LevelThreeGrid.isValid(a) && LevelThreeGrid.isValid(b)) {
+                    double delta = b - a;
+                    deltas[outOffset + x] = delta;
+                    if (delta < min) min = delta;
+                    if (delta > max) max = delta;
+                    sum += delta;
+                    count++;
+                } else {
+                    deltas[outOffset + x] = Double.NaN;
+                }
+            }
+            rowMin[y] = min;
+            rowMax[y] = max;
+            rowSum[y] = sum;
+            rowCount[y] = count;
+        });
+
+        int validCells = Arrays.stream(rowCount).sum();
+        double minDelta = validCells > 0 ? Arrays.stream(rowMin).min().getAsDouble() : 0;
+        double maxDelta = validCells > 0 ? Arrays.stream(rowMax).max().getAsDouble() : 0;
+        double meanDelta = validCells > 0 ? Arrays.stream(rowSum).sum() / validCells : 0;
+
+        // Symmetric colour scale from the 95th percentile of |delta| so a few extreme cells don't wash out the map
+        double[] absDeltas = Arrays.stream(deltas).filter(d -> !Double.isNaN(d)).map(Math::abs).toArray();
+        Arrays.parallelSort(absDeltas);
+        double scaleDelta = absDeltas.length > 0 ? absDeltas[(int) (absDeltas.length * 0.95)] : 1;
+        if (scaleDelta <= 0) {
+            scaleDelta = 1;
+        }
+
+        int[] pixels = new int[deltas.length];
+        double scale = scaleDelta;
+        IntStream.range(0, deltas.length).parallel().forEach(k -> {
+            if (!Double.isNaN(deltas[k])) {
+                pixels[k] = calculateDivergingColorARGB(deltas[k], scale);
+            }
+        });
+
+        String imagePng;
+        try {
+            imagePng = LevelThreeImages.encodeToBase64Png(pixels, width, height);
+        } catch (IOException e) {
+            logger.error("IO Exception when attempting to encode difference image: {}", e.getMessage());
+            throw new RuntimeException(e);
+        }
+
+        logger.debug("Difference of {} valid cells computed in {} ms", validCells, System.currentTimeMillis() - start);
+
+        return new LevelThreeDifferenceResponse(
+                null,
+                LevelThreeGranuleCatalog.granuleTime(from.granuleId()),
+                LevelThreeGranuleCatalog.granuleTime(to.granuleId()),
+                box != null ? box.lat1() : null,
+                box != null ? box.lat2() : null,
+                box != null ? box.lon1() : null,
+                box != null ? box.lon2() : null,
+                box != null ? null : scaleFactor,
+                validCells,
+                minDelta,
+                maxDelta,
+                meanDelta,
+                scaleDelta,
+                imagePng
+        );
+    }
+
+    private String findGranule(String timestamp) {
+        try {
+            return levelThreeGranuleCatalog.findByTimestamp(timestamp)
+                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "No granule found for " + timestamp));
+        } catch (IOException e) {
+            logger.error("IO Exception when attempting to find granule {}: {}", timestamp, e.getMessage());
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Blue for decreases, white for no change, red for increases, saturating at {@code ±scale}.
+     */
+    private static int calculateDivergingColorARGB(double delta, double scale) {
+        double normalized = delta / scale;
+        if (normalized < -1) normalized = -1;
+        if (normalized > 1) normalized = 1;
+
+        int red, green, blue;
+
+        if (normalized < 0) {
+            red = (int) ((1 + normalized) * 255);
+            green = red;
+            blue = 255;
+        } else {
+            red = 255;
+            green = (int) ((1 - normalized) * 255);
+            blue = green;
+        }
+
+        int rgb = (red << 16) | (green << 8) | blue;
+        return (LevelThreeImages.ALPHA << 24) | rgb;
+    }
+
+}
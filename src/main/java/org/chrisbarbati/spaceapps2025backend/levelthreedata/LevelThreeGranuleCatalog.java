@@ -0,0 +1,208 @@
+package org.chrisbarbati.spaceapps2025backend.levelthreedata;
+
+import org.chrisbarbati.spaceapps2025backend.GranulesAddedEvent;
+import org.chrisbarbati.spaceapps2025backend.PythonScheduler;
+import org.slf4j.*;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Lists the TEMPO granules available locally, newest first. The listing is kept in memory and rescanned when the
+ * downloader reports new granules, so requests never touch the directories.
+ * <p>
+ * Granules are removed in two steps: {@link #retire} takes them out of the listing atomically, and the files are
+ * deleted later under the write side of {@link #fileLock()}, which readers hold while a file is open.
+ */
+@Component
+public class LevelThreeGranuleCatalog {
+
+    //Logging
+    private static final Logger logger = LoggerFactory.getLogger(LevelThreeGranuleCatalog.class);
+
+    private static final Pattern DATE_PATTERN = Pattern.compile("_(\\d{8}T\\d{6})Z_");
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss");
+
+    private final PythonScheduler pythonScheduler;
+
+    private final AtomicReference<List<String>> tempoFiles = new AtomicReference<>();
+
+    // Retired but possibly not yet deleted; kept out of rescans
+    private final Set<String> retired = ConcurrentHashMap.newKeySet();
+
+    private final ReadWriteLock fileLock = new ReentrantReadWriteLock();
+
+    public LevelThreeGranuleCatalog(PythonScheduler pythonScheduler) {
+        this.pythonScheduler = pythonScheduler;
+    }
+
+    public List<String> getTempoFiles() throws IOException {
+        List<String> files = tempoFiles.get();
+        return files != null ? files : refresh();
+    }
+
+    /**
+     * Rescans before any other listener reacts to the event, so they all see the new granules.
+     */
+    @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void onGranulesAdded(GranulesAddedEvent event) {
+        try {
+            refresh();
+            logger.info("Catalog refreshed after {} granules were added", event.granules().size());
+        } catch (IOException e) {
+            logger.error("IO Exception when attempting to refresh tempo files: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Removes granules from the listing in one atomic swap, so new requests no longer see them.
+     */
+    public void retire(Collection<String> paths) {
+        retired.addAll(paths);
+        tempoFiles.updateAndGet(files -> files == null ? null : files.stream().filter(path -> !paths.contains(path)).toList());
+    }
+
+    /**
+     * @return true if the granule has been retired but not yet forgotten, i.e. its deletion is still pending
+     */
+    public boolean isRetired(String path) {
+        return retired.contains(path);
+    }
+
+    /**
+     * Called once retired files are gone from disk.
+     */
+    public void forget(Collection<String> paths) {
+        retired.removeAll(paths);
+    }
+
+    /**
+     * Held for reading while a granule file is open and for writing while granule files are deleted.
+     */
+    public ReadWriteLock fileLock() {
+        return fileLock;
+    }
+
+    /**
+     * Rescans the directories and swaps in the new listing. Granules retired while the scan was running are filtered
+     * out again as the listing is swapped in, so a concurrent {@link #retire} is never undone.
+     */
+    public List<String> refresh() throws IOException {
+        List<String> files = scan();
+        return tempoFiles.updateAndGet(current -> files.stream().filter(path -> !retired.contains(path)).toList());
+    }
+
+    List<String> scan() throws IOException {
+        // Python temp folder location
+        Path pythonTempDir = pythonScheduler.getTempoDataDir();
+
+        // Resources folder location
+        Path resourcesDir = Paths.get("src/main/resources/tempoData/NO2_L3");
+
+        logger.debug("Checking Python temp directory: {}", pythonTempDir);
+        logger.debug("Checking resources directory: {}", resourcesDir);
+
+        List<String> allFiles = new ArrayList<>();
+
+        // Add files from Python temp directory if it exists (priority location)
+        if (Files.exists(pythonTempDir) && Files.isDirectory(pythonTempDir)) {
+            List<String> pythonFiles;
+            try (Stream<Path> paths = Files.list(pythonTempDir)) {
+                pythonFiles = paths
+                        .filter(Files::isRegularFile)
+                        .map(Path::toString)
+                        .filter(name -> name.endsWith(".nc"))
+                        // Still being rewritten by the downloader
+                        .filter(name -> !name.contains("_temp_shortened"))
+                        .filter(name -> !retired.contains(name))
+                        .toList();
+            }
+            allFiles.addAll(pythonFiles);
+            logger.debug("Found {} files in Python temp directory", pythonFiles.size());
+        } else {
+            logger.debug("Python temp directory does not exist or is not a directory");
+        }
+
+        // Track filenames from Python directory to avoid duplicates
+        java.util.Set<String> pythonFileNames = allFiles.stream()
+                .map(path -> Paths.get(path).getFileName().toString())
+                .collect(Collectors.toSet());
+
+        // Add files from resources directory if it exists (only if not in Python directory)
+        if (Files.exists(resourcesDir) && Files.isDirectory(resourcesDir)) {
+            List<String> resourceFiles;
+            try (Stream<Path> paths = Files.list(resourcesDir)) {
+                resourceFiles = paths
+                        .filter(Files::isRegularFile)
+                        .filter(path -> path.toString().endsWith(".nc"))
+                        .filter(path -> !pythonFileNames.contains(path.getFileName().toString()))
+                        .map(Path::toString)
+                        .toList();
+            }
+            allFiles.addAll(resourceFiles);
+            logger.debug("Found {} unique files in resources directory (excluding duplicates)", resourceFiles.size());
+        } else {
+            logger.debug("Resources directory does not exist or is not a directory");
+        }
+
+        // Sort all files by date
+        return allFiles.stream()
+                .sorted(Comparator.comparing(LevelThreeGranuleCatalog::extractDateString).reversed())
+                .toList();
+    }
+
+    /**
+     * Finds the granule whose file name carries the given scan timestamp ({@code yyyyMMdd'T'HHmmss}, with or without
+     * a trailing {@code Z}).
+     */
+    public Optional<String> findByTimestamp(String timestamp) throws IOException {
+        String wanted = timestamp.endsWith("Z") ? timestamp.substring(0, timestamp.length() - 1) : timestamp;
+        return getTempoFiles().stream()
+                .filter(path -> extractDateString(path).equals(wanted))
+                .findFirst();
+    }
+
+    /**
+     * @return the scan start time encoded in the granule file name, or null if the name has no timestamp
+     */
+    public static Instant granuleTime(String path) {
+        String date = extractDateString(path);
+        return date.isEmpty() ? null : LocalDateTime.parse(date, DATE_FORMAT).toInstant(ZoneOffset.UTC);
+    }
+
+    public static String granuleIdOf(String path) {
+        String fileName = Paths.get(path).getFileName().toString();
+        return fileName.endsWith(".nc") ? fileName.substring(0, fileName.length() - 3) : fileName;
+    }
+
+    static String extractDateString(String path) {
+        Matcher m = DATE_PATTERN.matcher(path);
+        return m.find() ? m.group(1) : "";
+    }
+
+}
@@ -0,0 +1,295 @@
+package org.chrisbarbati.spaceapps2025backend.levelthreedata;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.chrisbarbati.spaceapps2025backend.GranulesAddedEvent;
+import org.chrisbarbati.spaceapps2025backend.GranulesRemovedEvent;
+import org.chrisbarbati.spaceapps2025backend.PythonScheduler;
+import org.slf4j.*;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.stream.Stream;
+
+/**
+ * Deletes downloaded granules older than {@code max-age}, then the oldest remaining ones until the download directory
+ * fits in {@code disk-budget}. The newest granule is always kept, and the bundled resource granules are never touched.
+ * <p>
+ * Expired granules are first retired from the catalog, so new requests stop seeing them, and only deleted after
+ * {@code delete-grace} so requests that already picked one up can finish reading it. Once deleted, a
+ * {@link GranulesRemovedEvent} tells the caches and composites to drop anything derived from them.
+ * <p>
+ * Every start downloads into a new {@code python_runner_*} temp directory, so granules left behind by earlier runs
+ * are never listed again. At startup, runner directories with nothing written for {@code max-age} are deleted whole.
+ */
+@Component
+public class LevelThreeGranuleRetention {
+
+    //Logging
+    private static final Logger logger = LoggerFactory.getLogger(LevelThreeGranuleRetention.class);
+
+    //Injected dependencies
+    private final PythonScheduler pythonScheduler;
+    private final LevelThreeGranuleCatalog levelThreeGranuleCatalog;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final boolean enabled;
+    private final Duration maxAge;
+    private final long diskBudgetBytes;
+    private final Duration deleteGrace;
+
+    private final ScheduledExecutorService retentionExecutor = Executors.newSingleThreadScheduledExecutor();
+    private final AtomicBoolean runQueued = new AtomicBoolean(false);
+
+    private final Counter reclaimedFiles;
+    private final Counter reclaimedBytes;
+
+    private volatile RetentionReport lastReport;
+
+    private record GranuleFile(Path path, Instant time, long size) {}
+
+    public record RetentionReport(int filesDeleted, long bytesReclaimed, int filesKept, long bytesKept) {}
+
+    public LevelThreeGranuleRetention(
+            PythonScheduler pythonScheduler,
+            LevelThreeGranuleCatalog levelThreeGranuleCatalog,
+            ApplicationEventPublisher eventPublisher,
+            MeterRegistry meterRegistry,
+            @Value("${levelthree.retention.enabled}") boolean enabled,
+            @Value("${levelthree.retention.max-age}") Duration maxAge,
+            @Value("${levelthree.retention.disk-budget}") DataSize diskBudget,
+            @Value("${levelthree.retention.delete-grace}") Duration deleteGrace) {
+        this.pythonScheduler = pythonScheduler;
+        this.levelThreeGranuleCatalog = levelThreeGranuleCatalog;
+        this.eventPublisher = eventPublisher;
+        this.enabled = enabled;
+        this.maxAge = maxAge;
+        this.diskBudgetBytes = diskBudget.toBytes();
+        this.deleteGrace = deleteGrace;
+        this.reclaimedFiles = Counter.builder("levelthree.retention.reclaimed.files").register(meterRegistry);
+        this.reclaimedBytes = Counter.builder("levelthree.retention.reclaimed.bytes").baseUnit("bytes").register(meterRegistry);
+    }
+
+    /**
+     * @return the outcome of the most recent deletion, or null if nothing has been deleted yet
+     */
+    public RetentionReport lastReport() {
+        return lastReport;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (enabled) {
+            retentionExecutor.execute(this::sweepOrphanedRunners);
+        }
+        scheduleRun();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Pending deletions are dropped; the next start's orphan sweep removes the files once they pass max-age
+        retentionExecutor.shutdownNow();
+    }
+
+    @EventListener
+    public void onGranulesAdded(GranulesAddedEvent event) {
+        scheduleRun();
+    }
+
+    private void scheduleRun() {
+        if (enabled && runQueued.compareAndSet(false, true)) {
+            retentionExecutor.execute(() -> {
+                runQueued.set(false);
+                try {
+                    retire();
+                } catch (IOException | RuntimeException e) {
+                    logger.error("Failed to apply granule retention: {}", e.getMessage(), e);
+                }
+            });
+        }
+    }
+
+    private void retire() throws IOException {
+        List<GranuleFile> granules = listGranules();
+        Instant cutoff = Instant.now().minus(maxAge);
+
+        List<GranuleFile> expired = new ArrayList<>();
+        long keptBytes = 0;
+        int keptFiles = 0;
+
+        for (int i = 0; i < granules.size(); i++) {
+            GranuleFile granule = granules.get(i);
+            boolean newest = i == 0;
+            if (!newest && (granule.time().isBefore(cutoff) || keptBytes + granule.size() > diskBudgetBytes)) {
+                expired.add(granule);
+            } else {
+                keptBytes += granule.size();
+                keptFiles++;
+            }
+        }
+
+        if (expired.isEmpty()) {
+            logger.debug("Granule retention: nothing to delete, {} files using {} MB", keptFiles, keptBytes >> 20);
+            return;
+        }
+
+        List<String> paths = expired.stream().map(granule -> granule.path().toString()).toList();
+        levelThreeGranuleCatalog.retire(paths);
+        logger.info("Granule retention: retired {} granules, deleting in {}", expired.size(), deleteGrace);
+
+        int filesKept = keptFiles;
+        long bytesKept = keptBytes;
+        retentionExecutor.schedule(() -> delete(expired, paths, filesKept, bytesKept), deleteGrace.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void delete(List<GranuleFile> expired, List<String> paths, int filesKept, long bytesKept) {
+        List<Path> deleted = new ArrayList<>();
+        long bytes = 0;
+
+        // Waits for any read still holding one of these files open
+        Lock writeLock = levelThreeGranuleCatalog.fileLock().writeLock();
+        writeLock.lock();
+        try {
+            for (GranuleFile granule : expired) {
+                try {
+                    if (Files.deleteIfExists(granule.path())) {
+                        deleted.add(granule.path());
+                        bytes += granule.size();
+                    }
+                } catch (IOException e) {
+                    logger.error("Failed to delete expired granule {}: {}", granule.path(), e.getMessage());
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+
+        levelThreeGranuleCatalog.forget(paths);
+
+        if (!deleted.isEmpty()) {
+            eventPublisher.publishEvent(new GranulesRemovedEvent(deleted));
+        }
+
+        reclaimedFiles.increment(deleted.size());
+        reclaimedBytes.increment(bytes);
+
+        RetentionReport report = new RetentionReport(deleted.size(), bytes, filesKept, bytesKept);
+        lastReport = report;
+        logger.info("Granule retention: deleted {} files, reclaimed {} MB; {} files using {} MB remain",
+                report.filesDeleted(), report.bytesReclaimed() >> 20, report.filesKept(), report.bytesKept() >> 20);
+    }
+
+    /**
+     * Deletes the working directories of earlier runs. A directory still being written to, e.g. by another instance
+     * on the same host, has something newer than {@code max-age} and is left alone.
+     */
+    private void sweepOrphanedRunners() {
+        Path ownRunner = pythonScheduler.getTempoDataDir().getParent();
+        Path tempRoot = ownRunner.getParent();
+        Instant cutoff = Instant.now().minus(maxAge);
+
+        try (DirectoryStream<Path> runners = Files.newDirectoryStream(tempRoot, "python_runner_*")) {
+            for (Path runner : runners) {
+                if (runner.equals(ownRunner) || !Files.isDirectory(runner)) {
+                    continue;
+                }
+                Instant lastWrite = lastWrite(runner);
+                if (lastWrite.isAfter(cutoff)) {
+                    logger.debug("Granule retention: keeping runner directory {}, last written {}", runner, lastWrite);
+                    continue;
+                }
+                deleteRunner(runner);
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.error("Failed to sweep orphaned runner directories in {}: {}", tempRoot, e.getMessage());
+        }
+    }
+
+    private static Instant lastWrite(Path dir) throws IOException {
+        Instant newest = Instant.EPOCH;
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.toList()) {
+                Instant modified = Files.getLastModifiedTime(path).toInstant();
+                if (modified.isAfter(newest)) {
+                    newest = modified;
+                }
+            }
+        }
+        return newest;
+    }
+
+    private void deleteRunner(Path runner) throws IOException {
+        int files = 0;
+        long bytes = 0;
+
+        try (Stream<Path> paths = Files.walk(runner)) {
+            // Deepest first, so each directory is empty by the time it is deleted
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                boolean granule = Files.isRegularFile(path) && path.getFileName().toString().endsWith(".nc");
+                long size = granule ? Files.size(path) : 0;
+                Files.deleteIfExists(path);
+                if (granule) {
+                    files++;
+                    bytes += size;
+                }
+            }
+        }
+
+        reclaimedFiles.increment(files);
+        reclaimedBytes.increment(bytes);
+        logger.info("Granule retention: deleted orphaned runner directory {}, reclaimed {} granules using {} MB",
+                runner, files, bytes >> 20);
+    }
+
+    /**
+     * Downloaded granules not already awaiting deletion, newest first.
+     */
+    private List<GranuleFile> listGranules() throws IOException {
+        Path dir = pythonScheduler.getTempoDataDir();
+        if (!Files.isDirectory(dir)) {
+            return List.of();
+        }
+
+        List<GranuleFile> granules = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path path : files.toList()) {
+                String name = path.getFileName().toString();
+                if (!Files.isRegularFile(path) || !name.endsWith(".nc") || name.contains("_temp_shortened")) {
+                    continue;
+                }
+                // Already retired by an earlier run and waiting out the grace period; its deletion is scheduled
+                if (levelThreeGranuleCatalog.isRetired(path.toString())) {
+                    continue;
+                }
+                Instant time = LevelThreeGranuleCatalog.granuleTime(path.toString());
+                if (time == null) {
+                    time = Files.getLastModifiedTime(path).toInstant();
+                }
+                granules.add(new GranuleFile(path, time, Files.size(path)));
+            }
+        }
+
+        granules.sort(Comparator.comparing(GranuleFile::time).reversed());
+        return granules;
+    }
+
+}
@@ -0,0 +1,154 @@
+package org.chrisbarbati.spaceapps2025backend.levelthreedata;
+
+import com.google.common.base.Suppliers;
+
+import java.util.function.Supplier;
+
+/**
+ * Decoded {@code vertical_column_total} grid for a single granule. Values are stored row-major with one row per
+ * latitude, so cell (i, j) is at {@code i * cols() + j}. A {@link LevelThreeTileIndex} and a
+ * {@link LevelThreeQuantileSketch} are built alongside the values.
+ * <p>
+ * When the granule has them, {@code vertical_column_total_uncertainty} and {@code main_data_quality_flag} are kept in
+ * arrays with the same layout so a {@link LevelThreeQualityFilter} can walk all three together. They are only read
+ * the first time a filter asks for them, so unfiltered traffic doesn't hold them in memory.
+ */
+public final class LevelThreeGrid {
+
+    public static final double INVALID_VALUE = -1E30;
+
+    private final String granuleId;
+    private final float[] lats;
+    private final float[] lons;
+    private final double[] values;
+    private final Supplier<float[]> uncertainty;
+    private final Supplier<byte[]> qualityFlags;
+    private final LevelThreeTileIndex tileIndex;
+    private final LevelThreeQuantileSketch quantileSketch;
+
+    public LevelThreeGrid(String granuleId, float[] lats, float[] lons, double[] values) {
+        this(granuleId, lats, lons, values, (float[]) null, (byte[]) null, LevelThreeQuantileSketch.DEFAULT_BINS);
+    }
+
+    public LevelThreeGrid(String granuleId, float[] lats, float[] lons, double[] values,
+                          float[] uncertainty, byte[] qualityFlags, int sketchBins) {
+        this(granuleId, lats, lons, values, () -> uncertainty, () -> qualityFlags, sketchBins);
+    }
+
+    /**
+     * @param uncertainty  called at most once, the first time the uncertainty layer is needed; may return null
+     * @param qualityFlags called at most once, the first time the quality flag layer is needed; may return null
+     */
+    public LevelThreeGrid(String granuleId, float[] lats, float[] lons, double[] values,
+                          Supplier<float[]> uncertainty, Supplier<byte[]> qualityFlags, int sketchBins) {
+        if (values.length != lats.length * lons.length) {
+            throw new IllegalArgumentException("Grid of " + values.length + " values does not match "
+                    + lats.length + " x " + lons.length + " coordinates");
+        }
+        this.granuleId = granuleId;
+        this.lats = lats;
+        this.lons = lons;
+        this.values = values;
+        this.uncertainty = Suppliers.memoize(() -> {
+            float[] layer = uncertainty.get();
+            checkLayerLength(layer != null ? layer.length : values.length);
+            return layer;
+        });
+        this.qualityFlags = Suppliers.memoize(() -> {
+            byte[] layer = qualityFlags.get();
+            checkLayerLength(layer != null ? layer.length : values.length);
+            return layer;
+        });
+        this.tileIndex = LevelThreeTileIndex.build(lats.length, lons.length, values);
+        this.quantileSketch = LevelThreeQuantileSketch.build(lons.length, values, tileIndex, sketchBins);
+    }
+
+    public String granuleId() {
+        return granuleId;
+    }
+
+    public float[] lats() {
+        return lats;
+    }
+
+    public float[] lons() {
+        return lons;
+    }
+
+    public double[] values() {
+        return values;
+    }
+
+    /**
+     * @return per-cell uncertainty, or null if the granule doesn't include it
+     */
+    public float[] uncertainty() {
+        return uncertainty.get();
+    }
+
+    /**
+     * @return per-cell quality flag (0 = normal, 1 = suspicious, 2 = bad), or null if the granule doesn't include it
+     */
+    public byte[] qualityFlags() {
+        return qualityFlags.get();
+    }
+
+    public LevelThreeTileIndex tileIndex() {
+        return tileIndex;
+    }
+
+    public LevelThreeQuantileSketch quantileSketch() {
+        return quantileSketch;
+    }
+
+    public int rows() {
+        return lats.length;
+    }
+
+    public int cols() {
+        return lons.length;
+    }
+
+    public double value(int row, int col) {
+        return values[row * lons.length + col];
+    }
+
+    private void checkLayerLength(int length) {
+        if (length != values.length) {
+            throw new IllegalArgumentException("Uncertainty and quality flag grids must match the value grid");
+        }
+    }
+
+    public static boolean isValid(double value) {
+        return value != INVALID_VALUE;
+    }
+
+    /**
+     * Finds the run of coordinates inside [lo, hi]. The grid axes are monotonic, so the run is contiguous.
+     */
+    public static IndexRange rangeOf(float[] coordinates, float lo, float hi) {
+        int first = -1;
+        int count = 0;
+        for (int i = 0; i < coordinates.length; i++) {
+            if (coordinates[i] >= lo && coordinates[i] <= hi) {
+                if (first == -1) {
+                    first = i;
+                }
+                count++;
+            }
+        }
+        return new IndexRange(first, count);
+    }
+
+    public record IndexRange(int first, int count) {
+
+        public int end() {
+            return first + count;
+        }
+
+        public boolean isEmpty() {
+            return count == 0;
+        }
+    }
+
+}
@@ -0,0 +1,158 @@
+package org.chrisbarbati.spaceapps2025backend.levelthreedata;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.chrisbarbati.spaceapps2025backend.GranulesRemovedEvent;
+import org.slf4j.*;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import ucar.ma2.DataType;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFiles;
+import ucar.nc2.Variable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Keeps the most recently used decoded granules in memory so repeated requests (and the tile index built with
+ * each grid) don't pay for a full NetCDF read every time. Concurrent requests for the same granule share one read.
+ */
+@Component
+public class LevelThreeGridCache {
+
+    //Logging
+    private static final Logger logger = LoggerFactory.getLogger(LevelThreeGridCache.class);
+
+    //Injected dependencies
+    private final LevelThreeGranuleCatalog levelThreeGranuleCatalog;
+
+    private final Cache<String, LevelThreeGrid> grids;
+    private final int sketchBins;
+
+    // Axes of the last grid read; every granule shares them, and they are small enough to keep after eviction
+    private volatile GridAxes gridAxes;
+
+    public record GridAxes(float[] lats, float[] lons) {}
+
+    public LevelThreeGridCache(
+            LevelThreeGranuleCatalog levelThreeGranuleCatalog,
+            @Value("${levelthree.grid-cache.max-granules}") int maxGranules,
+            @Value("${levelthree.percentile.sketch-bins}") int sketchBins) {
+        this.levelThreeGranuleCatalog = levelThreeGranuleCatalog;
+        this.sketchBins = sketchBins;
+        this.grids = CacheBuilder.newBuilder()
+                .maximumSize(maxGranules)
+                .build();
+    }
+
+    public LevelThreeGrid get(String path) throws IOException {
+        try {
+            return grids.get(path, () -> read(path));
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the cached grid if there is one, otherwise decodes the granule without caching it. For bulk reads such
+     * as composite updates, which would otherwise evict the grids requests are using.
+     */
+    public LevelThreeGrid getWithoutCaching(String path) throws IOException {
+        LevelThreeGrid cached = grids.getIfPresent(path);
+        return cached != null ? cached : read(path);
+    }
+
+    public void invalidate(String path) {
+        grids.invalidate(path);
+    }
+
+    @EventListener
+    public void onGranulesRemoved(GranulesRemovedEvent event) {
+        for (Path granule : event.granules()) {
+            invalidate(granule.toString());
+        }
+    }
+
+    public boolean isCached(String path) {
+        return grids.getIfPresent(path) != null;
+    }
+
+    /**
+     * @return the latitude and longitude axes of the most recently decoded granule, or null before the first read
+     */
+    public GridAxes gridAxes() {
+        return gridAxes;
+    }
+
+    private LevelThreeGrid read(String path) throws IOException {
+        logger.debug("Reading file: {}", path);
+
+        // Retention can't delete the file while it is open
+        Lock readLock = levelThreeGranuleCatalog.fileLock().readLock();
+        readLock.lock();
+        try (NetcdfFile ncFile = NetcdfFiles.open(path)) {
+            // Get latitudes
+            Variable latVar = ncFile.findVariable("latitude");
+            float[] lats = (float[]) latVar.read().copyTo1DJavaArray();
+
+            // Get longitudes
+            Variable lonVar = ncFile.findVariable("longitude");
+            float[] lons = (float[]) lonVar.read().copyTo1DJavaArray();
+
+            long start = System.currentTimeMillis();
+
+            // Read the whole 3D variable (time, lat, lon) for the NO2 data; time always has length 1
+            Variable prodVar = ncFile.findVariable("vertical_column_total");
+            double[] values = (double[]) prodVar.read().get1DJavaArray(DataType.DOUBLE);
+
+            // Uncertainty and quality flag are only needed by quality filters, so they are read on first use
+            LevelThreeGrid grid = new LevelThreeGrid(LevelThreeGranuleCatalog.granuleIdOf(path), lats, lons, values,
+                    () -> (float[]) readLayer(path, "vertical_column_total_uncertainty", DataType.FLOAT),
+                    () -> (byte[]) readLayer(path, "main_data_quality_flag", DataType.BYTE),
+                    sketchBins);
+            gridAxes = new GridAxes(lats, lons);
+
+            logger.debug("Decoded {} x {} grid with {} valid cells in {} ms",
+                    lats.length, lons.length, grid.tileIndex().totalValidCount(), System.currentTimeMillis() - start);
+
+            return grid;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Reads one per-cell variable kept by the downloader for filtering, or returns null if the granule doesn't have
+     * it (older files lack them).
+     */
+    private Object readLayer(String path, String variable, DataType dataType) {
+        logger.debug("Reading {} from file: {}", variable, path);
+
+        Lock readLock = levelThreeGranuleCatalog.fileLock().readLock();
+        readLock.lock();
+        try (NetcdfFile ncFile = NetcdfFiles.open(path)) {
+            Variable layerVar = ncFile.findVariable(variable);
+            return layerVar != null ? layerVar.read().get1DJavaArray(dataType) : null;
+        } catch (IOException e) {
+            logger.error("IO Exception when attempting to read {} from {}: {}", variable, path, e.getMessage());
+            throw new UncheckedIOException(e);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+}
@@ -0,0 +1,32 @@
+package org.chrisbarbati.spaceapps2025backend.levelthreedata;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Base64;
+
+/**
+ * PNG encoding shared by the level three renderers.
+ */
+final class LevelThreeImages {
+
+    static final int ALPHA = 128;
+
+    private LevelThreeImages() {
+    }
+
+    static String encodeToBase64Png(int[] pixels, int width, int height) throws IOException {
+        BufferedImage bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        bufferedImage.setRGB(0, 0, width, height, pixels, 0, width);
+
+        byte[] imageBytes;
+        try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
+            ImageIO.write(bufferedImage, "png", baos);
+            baos.flush();
+            imageBytes = baos.toByteArray();
+        }
+        return Base64.getEncoder().encodeToString(imageBytes);
+    }
+
+}
@@ -0,0 +1,174 @@
+package org.chrisbarbati.spaceapps2025backend.levelthreedata;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.*;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.IntStream;
+
+/**
+ * Resamples north-up equirectangular images to Web Mercator.
+ * <p>
+ * Longitude maps linearly in both projections, so only rows move. For each output row the two bracketing source
+ * rows and the blend weight are worked out once per grid geometry (the latitudes of the sampled rows) and cached;
+ * every granule on the same grid then reprojects with a plain gather and no trigonometry. Bilinear blending is left
+ * to the caller, which blends the two source values and colours the result: blending the colours themselves cuts
+ * across the colour scale, so halfway between yellow-green and orange would come out olive rather than yellow.
+ */
+@Component
+public class LevelThreeMercatorReprojector {
+
+    //Logging
+    private static final Logger logger = LoggerFactory.getLogger(LevelThreeMercatorReprojector.class);
+
+    private static final double MAX_MERCATOR_LAT = 85.05112878;
+
+    private final Cache<TableKey, RowTable> tables;
+
+    /**
+     * Latitudes of the sampled source rows, south to north, which is all a row table depends on.
+     */
+    private record TableKey(float[] rowLats) {
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof TableKey other && Arrays.equals(rowLats, other.rowLats);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(rowLats);
+        }
+    }
+
+    /**
+     * Colours an output pixel lying {@code weight} of the way from source pixel row {@code row0} to {@code row1}
+     * in column {@code x}; only called when both source pixels are opaque.
+     */
+    @FunctionalInterface
+    interface PixelBlender {
+        int blend(int row0, int row1, int x, float weight);
+    }
+
+    /**
+     * Output row {@code y} is drawn from source pixel rows {@code row0[y]} and {@code row1[y]}, with
+     * {@code weight[y]} the share of {@code row1}.
+     */
+    private record RowTable(int[] row0, int[] row1, float[] weight) {
+
+        int height() {
+            return row0.length;
+        }
+    }
+
+    public LevelThreeMercatorReprojector(@Value("${levelthree.mercator.table-cache-size}") int tableCacheSize) {
+        this.tables = CacheBuilder.newBuilder()
+                .maximumSize(tableCacheSize)
+                .build();
+    }
+
+    /**
+     * @param pixels    north-up ARGB image whose bottom row is grid row {@code firstRow} and whose rows are
+     *                  {@code step} grid rows apart
+     * @param blender   colours pixels between two source rows when {@code interpolation} is bilinear
+     * @return the reprojected image, the same width and with its height stretched to keep pixels square
+     */
+    int[] reproject(int[] pixels, int width, int height, float[] lats, int firstRow, int step,
+                    LevelThreeProjection.Interpolation interpolation, PixelBlender blender) {
+        if (height < 2) {
+            return pixels;
+        }
+
+        float[] rowLats = new float[height];
+        for (int s = 0; s < height; s++) {
+            rowLats[s] = lats[firstRow + s * step];
+        }
+
+        RowTable table;
+        try {
+            table = tables.get(new TableKey(rowLats), () -> buildTable(rowLats));
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+
+        boolean bilinear = interpolation == LevelThreeProjection.Interpolation.BILINEAR;
+        int[] out = new int[width * table.height()];
+
+        IntStream.range(0, table.height()).parallel().forEach(y -> {
+            int row0 = table.row0()[y];
+            int row1 = table.row1()[y];
+            int offset0 = row0 * width;
+            int offset1 = row1 * width;
+            float w = table.weight()[y];
+            int outOffset = y * width;
+
+            if (!bilinear) {
+                System.arraycopy(pixels, w < 0.5f ? offset0 : offset1, out, outOffset, width);
+                return;
+            }
+
+            for (int x = 0; x < width; x++) {
+                int a = pixels[offset0 + x];
+                int b = pixels[offset1 + x];
+                // Don't blend into transparent fill; take the nearer source instead
+                out[outOffset + x] = a == 0 || b == 0 ? (w < 0.5f ? a : b) : blender.blend(row0, row1, x, w);
+            }
+        });
+
+        return out;
+    }
+
+    private RowTable buildTable(float[] sampledLats) {
+        long start = System.currentTimeMillis();
+
+        int height = sampledLats.length;
+        double[] rowLats = new double[height];
+        for (int s = 0; s < height; s++) {
+            rowLats[s] = sampledLats[s];
+        }
+
+        double south = Math.max(rowLats[0], -MAX_MERCATOR_LAT);
+        double north = Math.min(rowLats[height - 1], MAX_MERCATOR_LAT);
+        double ySouth = mercatorY(south);
+        double yNorth = mercatorY(north);
+
+        // Stretch the row count by the average Mercator scale so square source pixels stay square
+        int outHeight = (int) Math.round((height - 1) * (yNorth - ySouth) / Math.toRadians(north - south)) + 1;
+
+        int[] row0 = new int[outHeight];
+        int[] row1 = new int[outHeight];
+        float[] weight = new float[outHeight];
+
+        for (int y = 0; y < outHeight; y++) {
+            double mercY = yNorth - (yNorth - ySouth) * y / (outHeight - 1);
+            double lat = Math.toDegrees(Math.atan(Math.sinh(mercY)));
+
+            int s = Arrays.binarySearch(rowLats, lat);
+            if (s < 0) {
+                s = -s - 2;
+            }
+            s = Math.max(0, Math.min(s, height - 2));
+
+            double fraction = (lat - rowLats[s]) / (rowLats[s + 1] - rowLats[s]);
+
+            // Pixel rows are north-up, so sample s sits at row height - 1 - s
+            row0[y] = height - 1 - s;
+            row1[y] = height - 2 - s;
+            weight[y] = (float) Math.max(0, Math.min(1, fraction));
+        }
+
+        logger.debug("Built Mercator row table {} -> {} rows in {} ms", height, outHeight, System.currentTimeMillis() - start);
+
+        return new RowTable(row0, row1, weight);
+    }
+
+    private static double mercatorY(double latDegrees) {
+        double phi = Math.toRadians(latDegrees);
+        return Math.log(Math.tan(Math.PI / 4 + phi / 2));
+    }
+
+}
@@ -0,0 +1,27 @@
+package org.chrisbarbati.spaceapps2025backend.levelthreedata;
+
+/**
+ * Output projection for rendered images. {@code NATIVE} is the equirectangular granule grid; {@code MERCATOR}
+ * resamples the rows to Web Mercator (EPSG:3857) so slippy-map clients can overlay the image without stretching it.
+ * Interpolation only applies to {@code MERCATOR}, so a native projection always carries {@code NEAREST} and every
+ * native request shares the same cache keys.
+ */
+public record LevelThreeProjection(Type type, Interpolation interpolation) {
+
+    public LevelThreeProjection {
+        if (type == Type.NATIVE) {
+            interpolation = Interpolation.NEAREST;
+        }
+    }
+
+    public static final LevelThreeProjection NATIVE = new LevelThreeProjection(Type.NATIVE, Interpolation.NEAREST);
+
+    public enum Type { NATIVE, MERCATOR }
+
+    public enum Interpolation { NEAREST, BILINEAR }
+
+    public boolean isMercator() {
+        return type == Type.MERCATOR;
+    }
+
+}
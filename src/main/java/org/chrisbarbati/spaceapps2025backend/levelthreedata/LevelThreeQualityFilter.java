@@ -0,0 +1,59 @@
+package org.chrisbarbati.spaceapps2025backend.levelthreedata;
+
+/**
+ * Request-level mask on top of the fill check. A cell is kept only if its quality flag is at most
+ * {@code maxQualityFlag} and its uncertainty is at most {@code maxRelativeUncertainty} times its value; a cell whose
+ * uncertainty is missing (negative fill) fails the uncertainty limit. Either limit may be null, and a limit is
+ * ignored for granules that don't carry the matching variable.
+ */
+public record LevelThreeQualityFilter(Integer maxQualityFlag, Double maxRelativeUncertainty) {
+
+    public static final LevelThreeQualityFilter NONE = new LevelThreeQualityFilter(null, null);
+
+    public boolean isActive() {
+        return maxQualityFlag != null || maxRelativeUncertainty != null;
+    }
+
+    /**
+     * Binds the filter to a grid, resolving which of the extra arrays it needs up front so the per-cell check is
+     * just a few array reads at the same index.
+     */
+    Mask maskFor(LevelThreeGrid grid) {
+        byte[] flags = maxQualityFlag != null ? grid.qualityFlags() : null;
+        float[] uncertainty = maxRelativeUncertainty != null ? grid.uncertainty() : null;
+        return new Mask(grid.values(), flags, uncertainty,
+                maxQualityFlag != null ? maxQualityFlag : Integer.MAX_VALUE,
+                maxRelativeUncertainty != null ? maxRelativeUncertainty : Double.POSITIVE_INFINITY);
+    }
+
+    static final class Mask {
+
+        private final double[] values;
+        private final byte[] flags;
+        private final float[] uncertainty;
+        private final int maxFlag;
+        private final double maxRelativeUncertainty;
+
+        private Mask(double[] values, byte[] flags, float[] uncertainty, int maxFlag, double maxRelativeUncertainty) {
+            this.values = values;
+            this.flags = flags;
+            this.uncertainty = uncertainty;
+            this.maxFlag = maxFlag;
+            this.maxRelativeUncertainty = maxRelativeUncertainty;
+        }
+
+        boolean accepts(int k) {
+            double v = values[k];
+            if (!LevelThreeGrid.isValid(v)) {
+                return false;
+            }
+            if (flags != null && (flags[k] < 0 || flags[k] > maxFlag)) {
+                return false;
+            }
+            // A negative uncertainty is the fill value, not a tight bound
+            return uncertainty == null
+                    || (uncertainty[k] >= 0 && uncertainty[k] <= maxRelativeUncertainty * Math.abs(v));
+        }
+    }
+
+}
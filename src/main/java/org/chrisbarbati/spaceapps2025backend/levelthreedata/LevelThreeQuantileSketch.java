@@ -0,0 +1,270 @@
+package org.chrisbarbati.spaceapps2025backend.levelthreedata;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Per-tile histograms, each with {@code bins} equal bins between that tile's own minimum and maximum, so the value
+ * distribution of any window can be approximated from the tiles it covers. Tiles only partly inside the window are
+ * refined by adding their cells individually.
+ * <p>
+ * Binning every tile over its own range keeps the bins narrow relative to the local spread, which is what the colour
+ * scale of a regional window depends on. Since tiles have different bin edges, percentiles are found by bisecting
+ * on the value: for any x, the histograms give a lower and an upper bound on the number of cells at or below x, which
+ * brackets the true percentile, and the estimate is interpolated inside the bracket. If the bracket is wider than the
+ * requested error bound, the caller falls back to the exact calculation.
+ */
+public final class LevelThreeQuantileSketch {
+
+    public static final int DEFAULT_BINS = 256;
+
+    private static final int MAX_BISECTION_STEPS = 100;
+
+    private final int bins;
+    private final int tileCols;
+    // Cumulative counts per tile: cumulative[t * bins + k] is the number of valid cells of tile t in bins 0..k
+    private final int[] cumulative;
+
+    private LevelThreeQuantileSketch(int bins, int tileCols, int tileCount) {
+        this.bins = bins;
+        this.tileCols = tileCols;
+        this.cumulative = new int[tileCount * bins];
+    }
+
+    public static LevelThreeQuantileSketch build(int cols, double[] values, LevelThreeTileIndex tiles, int bins) {
+        int rows = values.length / Math.max(cols, 1);
+        LevelThreeQuantileSketch sketch = new LevelThreeQuantileSketch(bins, tiles.tileCols(), tiles.tileRows() * tiles.tileCols());
+
+        int tileSize = LevelThreeTileIndex.TILE_SIZE;
+        IntStream.range(0, tiles.tileRows()).parallel().forEach(tr -> {
+            int r0 = tr * tileSize;
+            int r1 = Math.min(r0 + tileSize, rows);
+            for (int tc = 0; tc < tiles.tileCols(); tc++) {
+                if (tiles.isEmpty(tr, tc)) {
+                    continue;
+                }
+                int c0 = tc * tileSize;
+                int c1 = Math.min(c0 + tileSize, cols);
+                int base = (tr * sketch.tileCols + tc) * bins;
+                double min = tiles.min(tr, tc);
+                double width = (tiles.max(tr, tc) - min) / bins;
+                for (int i = r0; i < r1; i++) {
+                    int rowOffset = i * cols;
+                    for (int j = c0; j < c1; j++) {
+                        double v = values[rowOffset + j];
+                        if (LevelThreeGrid.isValid(v)) {
+                            sketch.cumulative[base + binOf(v, min, width, bins)]++;
+                        }
+                    }
+                }
+                for (int k = 1; k < bins; k++) {
+                    sketch.cumulative[base + k] += sketch.cumulative[base + k - 1];
+                }
+            }
+        });
+
+        return sketch;
+    }
+
+    /**
+     * Estimates the {@code lowPercentile} and {@code highPercentile} values of the valid cells in a window, using
+     * the same rank convention as the exact calculation ({@code sorted[(int) (size * p)]}).
+     *
+     * @return {@code [low, high]}, or {@code null} if the window has no valid cells or the true percentiles can't be
+     *         guaranteed to lie within {@code maxRelativeError * (high - low)} of the estimates
+     */
+    public double[] estimate(LevelThreeGrid grid, LevelThreeGrid.IndexRange rowRange, LevelThreeGrid.IndexRange colRange,
+                             double lowPercentile, double highPercentile, double maxRelativeError) {
+        Window window = collect(grid, rowRange, colRange);
+
+        if (window.total == 0) {
+            return null;
+        }
+
+        long lowRank = (long) (window.total * lowPercentile);
+        long highRank = (long) (window.total * highPercentile);
+
+        double low = window.valueAtRank(lowRank, Bound.INTERPOLATED);
+        double high = window.valueAtRank(highRank, Bound.INTERPOLATED);
+        double lowError = window.valueAtRank(lowRank, Bound.LOWER) - window.valueAtRank(lowRank, Bound.UPPER);
+        double highError = window.valueAtRank(highRank, Bound.LOWER) - window.valueAtRank(highRank, Bound.UPPER);
+
+        if (high <= low || Math.max(lowError, highError) > maxRelativeError * (high - low)) {
+            return null;
+        }
+
+        return new double[] {low, high};
+    }
+
+    private Window collect(LevelThreeGrid grid, LevelThreeGrid.IndexRange rowRange, LevelThreeGrid.IndexRange colRange) {
+        LevelThreeTileIndex tiles = grid.tileIndex();
+        double[] values = grid.values();
+        int cols = grid.cols();
+        int tileSize = LevelThreeTileIndex.TILE_SIZE;
+
+        int firstTileRow = rowRange.first() / tileSize;
+        int lastTileRow = (rowRange.end() - 1) / tileSize;
+        int firstTileCol = colRange.first() / tileSize;
+        int lastTileCol = (colRange.end() - 1) / tileSize;
+        int maxTiles = (lastTileRow - firstTileRow + 1) * (lastTileCol - firstTileCol + 1);
+
+        Window window = new Window(maxTiles);
+
+        for (int tr = firstTileRow; tr <= lastTileRow; tr++) {
+            int r0 = Math.max(tr * tileSize, rowRange.first());
+            int r1 = Math.min((tr + 1) * tileSize, rowRange.end());
+            boolean rowsCovered = r0 == tr * tileSize && r1 == Math.min((tr + 1) * tileSize, grid.rows());
+
+            for (int tc = firstTileCol; tc <= lastTileCol; tc++) {
+                if (tiles.isEmpty(tr, tc)) {
+                    continue;
+                }
+                int c0 = Math.max(tc * tileSize, colRange.first());
+                int c1 = Math.min((tc + 1) * tileSize, colRange.end());
+                boolean colsCovered = c0 == tc * tileSize && c1 == Math.min((tc + 1) * tileSize, cols);
+
+                if (rowsCovered && colsCovered) {
+                    // Whole tile inside the window: use its histogram
+                    window.addTile((tr * tileCols + tc) * bins, tiles.min(tr, tc), tiles.max(tr, tc), tiles.validCount(tr, tc));
+                    continue;
+                }
+
+                // Edge tile: add only the cells inside the window
+                for (int i = r0; i < r1; i++) {
+                    int rowOffset = i * cols;
+                    for (int j = c0; j < c1; j++) {
+                        double v = values[rowOffset + j];
+                        if (LevelThreeGrid.isValid(v)) {
+                            window.addCell(v);
+                        }
+                    }
+                }
+            }
+        }
+
+        window.finish();
+        return window;
+    }
+
+    private static int binOf(double v, double min, double width, int bins) {
+        if (width <= 0) {
+            return 0;
+        }
+        return Math.min(bins - 1, (int) ((v - min) / width));
+    }
+
+    /**
+     * Which count of cells at or below x to use: {@code LOWER} only counts bins lying wholly at or below x,
+     * {@code UPPER} also counts the bin containing x, and {@code INTERPOLATED} counts the part of that bin below x.
+     */
+    private enum Bound { LOWER, UPPER, INTERPOLATED }
+
+    /**
+     * Whole tiles and individual edge cells covered by one window.
+     */
+    private final class Window {
+
+        private final int[] tileBases;
+        private final double[] tileMins;
+        private final double[] tileMaxs;
+        private int tileCount;
+
+        private double[] cells = new double[256];
+        private int cellCount;
+
+        private long total;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+
+        private Window(int maxTiles) {
+            this.tileBases = new int[maxTiles];
+            this.tileMins = new double[maxTiles];
+            this.tileMaxs = new double[maxTiles];
+        }
+
+        private void addTile(int base, double tileMin, double tileMax, int validCount) {
+            tileBases[tileCount] = base;
+            tileMins[tileCount] = tileMin;
+            tileMaxs[tileCount] = tileMax;
+            tileCount++;
+            total += validCount;
+            min = Math.min(min, tileMin);
+            max = Math.max(max, tileMax);
+        }
+
+        private void addCell(double v) {
+            if (cellCount == cells.length) {
+                cells = Arrays.copyOf(cells, cellCount * 2);
+            }
+            cells[cellCount++] = v;
+            total++;
+            min = Math.min(min, v);
+            max = Math.max(max, v);
+        }
+
+        private void finish() {
+            Arrays.sort(cells, 0, cellCount);
+        }
+
+        /**
+         * Smallest value x whose count of cells at or below x exceeds {@code rank}, found by bisection. The
+         * {@code LOWER} count gives an upper bound on the true value and the {@code UPPER} count a lower bound.
+         */
+        private double valueAtRank(long rank, Bound bound) {
+            double lo = Math.nextDown(min);
+            double hi = max;
+            for (int step = 0; step < MAX_BISECTION_STEPS; step++) {
+                double mid = lo + (hi - lo) / 2;
+                if (mid <= lo || mid >= hi) {
+                    break;
+                }
+                if (countAtOrBelow(mid, bound) > rank) {
+                    hi = mid;
+                } else {
+                    lo = mid;
+                }
+            }
+            return hi;
+        }
+
+        private double countAtOrBelow(double x, Bound bound) {
+            double count = cellsAtOrBelow(x);
+            for (int t = 0; t < tileCount; t++) {
+                double tileMin = tileMins[t];
+                if (x < tileMin) {
+                    continue;
+                }
+                int base = tileBases[t];
+                if (x >= tileMaxs[t]) {
+                    count += cumulative[base + bins - 1];
+                    continue;
+                }
+                double width = (tileMaxs[t] - tileMin) / bins;
+                int k = binOf(x, tileMin, width, bins);
+                int below = k > 0 ? cumulative[base + k - 1] : 0;
+                int inBin = cumulative[base + k] - below;
+                count += switch (bound) {
+                    case LOWER -> below;
+                    case UPPER -> below + inBin;
+                    case INTERPOLATED -> below + inBin * Math.clamp((x - (tileMin + k * width)) / width, 0.0, 1.0);
+                };
+            }
+            return count;
+        }
+
+        private int cellsAtOrBelow(double x) {
+            int lo = 0;
+            int hi = cellCount;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (cells[mid] <= x) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+
+}
@@ -1,11 +1,16 @@
 package org.chrisbarbati.spaceapps2025backend.levelthreedata;
 
 import org.slf4j.*;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.time.Instant;
 import java.util.ArrayList;
@@ -20,9 +25,23 @@ public class LevelThreeRestController {
 
     //Injected dependencies
     private final LevelThreeRetrievalService levelThreeRetrievalService;
+    private final LevelThreeCompositeService levelThreeCompositeService;
+    private final LevelThreeDifferenceService levelThreeDifferenceService;
+    private final LevelThreeContourService levelThreeContourService;
+    private final LevelThreeAdmissionControl levelThreeAdmissionControl;
 
-    public LevelThreeRestController(LevelThreeRetrievalService levelThreeRetrievalService) {
+    private static final MediaType GEO_JSON = MediaType.parseMediaType("application/geo+json");
+
+    public LevelThreeRestController(LevelThreeRetrievalService levelThreeRetrievalService,
+                                    LevelThreeCompositeService levelThreeCompositeService,
+                                    LevelThreeDifferenceService levelThreeDifferenceService,
+                                    LevelThreeContourService levelThreeContourService,
+                                    LevelThreeAdmissionControl levelThreeAdmissionControl) {
         this.levelThreeRetrievalService = levelThreeRetrievalService;
+        this.levelThreeCompositeService = levelThreeCompositeService;
+        this.levelThreeDifferenceService = levelThreeDifferenceService;
+        this.levelThreeContourService = levelThreeContourService;
+        this.levelThreeAdmissionControl = levelThreeAdmissionControl;
     }
 
     @GetMapping("/retrieve")
@@ -30,11 +49,18 @@ public class LevelThreeRestController {
             @RequestParam("lat1") float lat1,
             @RequestParam("lat2") float lat2,
             @RequestParam("lon1") float lon1,
-            @RequestParam("lon2") float lon2
+            @RequestParam("lon2") float lon2,
+            @RequestParam(value = "maxQualityFlag", required = false) Integer maxQualityFlag,
+            @RequestParam(value = "maxRelativeUncertainty", required = false) Double maxRelativeUncertainty,
+            @RequestParam(value = "projection", defaultValue = "native") String projection,
+            @RequestParam(value = "interpolation", defaultValue = "bilinear") String interpolation
     ) {
         logger.info("Retrieving Level Three Data");
 
-        LevelThreeData levelThreeData = levelThreeRetrievalService.retrieveLatest(lat1, lat2, lon1, lon2);
+        long pixels = levelThreeAdmissionControl.regionPixels(new LevelThreeBoundingBox(lat1, lat2, lon1, lon2));
+        LevelThreeData levelThreeData = levelThreeAdmissionControl.runAdmitted("retrieve", 1, pixels, levelThreeAdmissionControl.decodesForLatest(1),
+                () -> levelThreeRetrievalService.retrieveLatest(lat1, lat2, lon1, lon2,
+                        new LevelThreeQualityFilter(maxQualityFlag, maxRelativeUncertainty), projectionOf(projection, interpolation)));
         LevelThreeDataResponse response = mapToDataResponse(levelThreeData, lat1, lat2, lon1, lon2);
 
         return ResponseEntity.ok(response);
@@ -46,23 +72,66 @@ public class LevelThreeRestController {
             @RequestParam("lat2") float lat2,
             @RequestParam("lon1") float lon1,
             @RequestParam("lon2") float lon2,
-            @RequestParam("n") int n
+            @RequestParam("n") int n,
+            @RequestParam(value = "maxQualityFlag", required = false) Integer maxQualityFlag,
+            @RequestParam(value = "maxRelativeUncertainty", required = false) Double maxRelativeUncertainty,
+            @RequestParam(value = "projection", defaultValue = "native") String projection,
+            @RequestParam(value = "interpolation", defaultValue = "bilinear") String interpolation
     ) {
         logger.info("Retrieving Level Three Data");
 
-        List<LevelThreeData> levelThreeDataList = levelThreeRetrievalService.retrieveNLatest(lat1, lat2, lon1, lon2, n);
+        requireAtLeastOne("n", n);
+
+        long pixels = levelThreeAdmissionControl.regionPixels(new LevelThreeBoundingBox(lat1, lat2, lon1, lon2));
+        List<LevelThreeData> levelThreeDataList = levelThreeAdmissionControl.runAdmitted("retrieveN", n, pixels, levelThreeAdmissionControl.decodesForLatest(n),
+                () -> levelThreeRetrievalService.retrieveNLatest(lat1, lat2, lon1, lon2, n,
+                        new LevelThreeQualityFilter(maxQualityFlag, maxRelativeUncertainty), projectionOf(projection, interpolation)));
         List<LevelThreeDataResponse> responseList = mapToDataResponseList(levelThreeDataList, lat1, lat2, lon1, lon2);
 
         return ResponseEntity.ok(responseList);
     }
 
+    @PostMapping("/retrieveBatch")
+    public ResponseEntity<List<LevelThreeDataResponse>> retrieveBatch(
+            @RequestBody List<LevelThreeBoundingBox> boxes,
+            @RequestParam(value = "maxQualityFlag", required = false) Integer maxQualityFlag,
+            @RequestParam(value = "maxRelativeUncertainty", required = false) Double maxRelativeUncertainty,
+            @RequestParam(value = "projection", defaultValue = "native") String projection,
+            @RequestParam(value = "interpolation", defaultValue = "bilinear") String interpolation
+    ) {
+        logger.info("Retrieving Level Three Data for {} regions", boxes.size());
+
+        // The regions are rendered in parallel, so they are charged as one render of their combined size
+        long pixels = boxes.stream().mapToLong(levelThreeAdmissionControl::regionPixels).sum();
+        List<LevelThreeData> levelThreeDataList = levelThreeAdmissionControl.runAdmitted("retrieveBatch", 1, pixels, levelThreeAdmissionControl.decodesForLatest(1),
+                () -> levelThreeRetrievalService.retrieveLatestBatch(boxes,
+                        new LevelThreeQualityFilter(maxQualityFlag, maxRelativeUncertainty), projectionOf(projection, interpolation)));
+
+        List<LevelThreeDataResponse> responseList = new ArrayList<>();
+        for (int i = 0; i < boxes.size(); i++) {
+            LevelThreeBoundingBox box = boxes.get(i);
+            responseList.add(mapToDataResponse(levelThreeDataList.get(i), box.lat1(), box.lat2(), box.lon1(), box.lon2()));
+        }
+
+        return ResponseEntity.ok(responseList);
+    }
+
     @GetMapping("/retrieveFull")
     public ResponseEntity<LevelThreeFullDataResponse> retrieveFull(
-            @RequestParam(value = "scaleFactor", defaultValue = "10") int scaleFactor
+            @RequestParam(value = "scaleFactor", defaultValue = "10") int scaleFactor,
+            @RequestParam(value = "maxQualityFlag", required = false) Integer maxQualityFlag,
+            @RequestParam(value = "maxRelativeUncertainty", required = false) Double maxRelativeUncertainty,
+            @RequestParam(value = "projection", defaultValue = "native") String projection,
+            @RequestParam(value = "interpolation", defaultValue = "bilinear") String interpolation
     ) {
         logger.info("Retrieving full Level Three Data with scale factor {}", scaleFactor);
 
-        LevelThreeData levelThreeData = levelThreeRetrievalService.retrieveLatestFullDownscaled(scaleFactor);
+        requireAtLeastOne("scaleFactor", scaleFactor);
+
+        long pixels = levelThreeAdmissionControl.fullPixels(scaleFactor);
+        LevelThreeData levelThreeData = levelThreeAdmissionControl.runAdmitted("retrieveFull", 1, pixels, levelThreeAdmissionControl.decodesForLatest(1),
+                () -> levelThreeRetrievalService.retrieveLatestFullDownscaled(scaleFactor,
+                        new LevelThreeQualityFilter(maxQualityFlag, maxRelativeUncertainty), projectionOf(projection, interpolation)));
         LevelThreeFullDataResponse response = mapToFullDataResponse(levelThreeData, scaleFactor);
 
         return ResponseEntity.ok(response);
@@ -71,16 +140,163 @@ public class LevelThreeRestController {
     @GetMapping("/retrieveNFull")
     public ResponseEntity<List<LevelThreeFullDataResponse>> retrieveNFull(
             @RequestParam("n") int n,
-            @RequestParam(value = "scaleFactor", defaultValue = "10") int scaleFactor
+            @RequestParam(value = "scaleFactor", defaultValue = "10") int scaleFactor,
+            @RequestParam(value = "maxQualityFlag", required = false) Integer maxQualityFlag,
+            @RequestParam(value = "maxRelativeUncertainty", required = false) Double maxRelativeUncertainty,
+            @RequestParam(value = "projection", defaultValue = "native") String projection,
+            @RequestParam(value = "interpolation", defaultValue = "bilinear") String interpolation
     ) {
         logger.info("Retrieving {} samples of full Level Three Data with scale factor {}", n, scaleFactor);
 
-        List<LevelThreeData> levelThreeDataList = levelThreeRetrievalService.retrieveNLatestFullDownscaled(n, scaleFactor);
+        requireAtLeastOne("n", n);
+        requireAtLeastOne("scaleFactor", scaleFactor);
+
+        long pixels = levelThreeAdmissionControl.fullPixels(scaleFactor);
+        List<LevelThreeData> levelThreeDataList = levelThreeAdmissionControl.runAdmitted("retrieveNFull", n, pixels, levelThreeAdmissionControl.decodesForLatest(n),
+                () -> levelThreeRetrievalService.retrieveNLatestFullDownscaled(n, scaleFactor,
+                        new LevelThreeQualityFilter(maxQualityFlag, maxRelativeUncertainty), projectionOf(projection, interpolation)));
         List<LevelThreeFullDataResponse> responseList = mapToFullDataResponseList(levelThreeDataList, scaleFactor);
 
         return ResponseEntity.ok(responseList);
     }
 
+    @GetMapping("/retrieveComposite")
+    public ResponseEntity<LevelThreeCompositeResponse> retrieveComposite(
+            @RequestParam("lat1") float lat1,
+            @RequestParam("lat2") float lat2,
+            @RequestParam("lon1") float lon1,
+            @RequestParam("lon2") float lon2,
+            @RequestParam(value = "hours", defaultValue = "24") int hours,
+            @RequestParam(value = "projection", defaultValue = "native") String projection,
+            @RequestParam(value = "interpolation", defaultValue = "bilinear") String interpolation
+    ) {
+        logger.info("Retrieving {}h composite Level Three Data", hours);
+
+        LevelThreeRollingComposite.Snapshot snapshot = getCompositeSnapshot(hours);
+        LevelThreeBoundingBox box = new LevelThreeBoundingBox(lat1, lat2, lon1, lon2);
+        LevelThreeData data = levelThreeAdmissionControl.runAdmitted("retrieveComposite", 1, levelThreeAdmissionControl.regionPixels(box), 0,
+                () -> levelThreeRetrievalService.renderRegion(snapshot.meanGrid(), box, projectionOf(projection, interpolation)));
+
+        return ResponseEntity.ok(new LevelThreeCompositeResponse(
+                Instant.now(),
+                snapshot.windowHours(),
+                snapshot.granuleCount(),
+                snapshot.newestGranuleInstant(),
+                lat1,
+                lat2,
+                lon1,
+                lon2,
+                null,
+                data.minNO2(),
+                data.maxNO2(),
+                data.centerNO2(),
+                data.imageBase64()
+        ));
+    }
+
+    @GetMapping("/retrieveCompositeFull")
+    public ResponseEntity<LevelThreeCompositeResponse> retrieveCompositeFull(
+            @RequestParam(value = "hours", defaultValue = "24") int hours,
+            @RequestParam(value = "scaleFactor", defaultValue = "10") int scaleFactor,
+            @RequestParam(value = "projection", defaultValue = "native") String projection,
+            @RequestParam(value = "interpolation", defaultValue = "bilinear") String interpolation
+    ) {
+        logger.info("Retrieving full {}h composite Level Three Data with scale factor {}", hours, scaleFactor);
+
+        requireAtLeastOne("scaleFactor", scaleFactor);
+
+        LevelThreeRollingComposite.Snapshot snapshot = getCompositeSnapshot(hours);
+        LevelThreeData data = levelThreeAdmissionControl.runAdmitted("retrieveCompositeFull", 1, levelThreeAdmissionControl.fullPixels(scaleFactor), 0,
+                () -> levelThreeRetrievalService.renderFullDownscaled(snapshot.meanGrid(), scaleFactor, projectionOf(projection, interpolation)));
+
+        return ResponseEntity.ok(new LevelThreeCompositeResponse(
+                Instant.now(),
+                snapshot.windowHours(),
+                snapshot.granuleCount(),
+                snapshot.newestGranuleInstant(),
+                null,
+                null,
+                null,
+                null,
+                scaleFactor,
+                data.minNO2(),
+                data.maxNO2(),
+                null,
+                data.imageBase64()
+        ));
+    }
+
+    @GetMapping("/retrieveDifference")
+    public ResponseEntity<LevelThreeDifferenceResponse> retrieveDifference(
+            @RequestParam("from") String from,
+            @RequestParam("to") String to,
+            @RequestParam(value = "lat1", required = false) Float lat1,
+            @RequestParam(value = "lat2", required = false) Float lat2,
+            @RequestParam(value = "lon1", required = false) Float lon1,
+            @RequestParam(value = "lon2", required = false) Float lon2,
+            @RequestParam(value = "scaleFactor", defaultValue = "10") int scaleFactor
+    ) {
+        logger.info("Retrieving Level Three difference from {} to {}", from, to);
+
+        LevelThreeBoundingBox box = null;
+        if (lat1 != null && lat2 != null && lon1 != null && lon2 != null) {
+            box = new LevelThreeBoundingBox(lat1, lat2, lon1, lon2);
+        } else if (lat1 != null || lat2 != null || lon1 != null || lon2 != null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Either all or none of lat1, lat2, lon1 and lon2 must be given");
+        }
+
+        // Both granules are held at once
+        LevelThreeBoundingBox window = box;
+        long pixels = box != null ? levelThreeAdmissionControl.regionPixels(box) : levelThreeAdmissionControl.fullPixels(scaleFactor);
+        return ResponseEntity.ok(levelThreeAdmissionControl.runAdmitted("retrieveDifference", 2, pixels, 2,
+                () -> levelThreeDifferenceService.retrieveDifference(from, to, window, scaleFactor)));
+    }
+
+    @GetMapping("/retrieveContours")
+    public ResponseEntity<LevelThreeContourResponse> retrieveContours(
+            @RequestParam("thresholds") List<Double> thresholds,
+            @RequestParam(value = "timestamp", required = false) String timestamp,
+            @RequestParam(value = "scaleFactor", defaultValue = "4") int scaleFactor,
+            @RequestParam(value = "tolerance", defaultValue = "0.02") double tolerance
+    ) {
+        logger.info("Retrieving Level Three contours at {} with scale factor {}", thresholds, scaleFactor);
+
+        int decodes = timestamp == null ? levelThreeAdmissionControl.decodesForLatest(1) : 1;
+        LevelThreeContourResponse response = levelThreeAdmissionControl.runAdmitted("retrieveContours", 1, levelThreeAdmissionControl.fullPixels(scaleFactor), decodes,
+                () -> levelThreeContourService.retrieveContours(timestamp, thresholds, scaleFactor, tolerance));
+
+        return ResponseEntity.ok().contentType(GEO_JSON).body(response);
+    }
+
+    private static void requireAtLeastOne(String name, int value) {
+        if (value < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, name + " must be at least 1");
+        }
+    }
+
+    private LevelThreeProjection projectionOf(String projection, String interpolation) {
+        try {
+            return new LevelThreeProjection(
+                    LevelThreeProjection.Type.valueOf(projection.toUpperCase()),
+                    LevelThreeProjection.Interpolation.valueOf(interpolation.toUpperCase()));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown projection " + projection + " or interpolation " + interpolation);
+        }
+    }
+
+    private LevelThreeRollingComposite.Snapshot getCompositeSnapshot(int hours) {
+        LevelThreeRollingComposite.Snapshot snapshot;
+        try {
+            snapshot = levelThreeCompositeService.snapshot(hours);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        if (snapshot == null) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "The " + hours + "h composite has no data yet");
+        }
+        return snapshot;
+    }
+
     private LevelThreeDataResponse mapToDataResponse(LevelThreeData data, float lat1, float lat2, float lon1, float lon2) {
         return new LevelThreeDataResponse(
                 Instant.now(),
@@ -1,27 +1,22 @@
 package org.chrisbarbati.spaceapps2025backend.levelthreedata;
 
-import org.chrisbarbati.spaceapps2025backend.PythonScheduler;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.chrisbarbati.spaceapps2025backend.GranulesRemovedEvent;
 import org.slf4j.*;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
-import ucar.ma2.Array;
-import ucar.ma2.Index;
-import ucar.nc2.NetcdfFile;
-import ucar.nc2.NetcdfFiles;
-import ucar.nc2.Variable;
-
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
+
 import java.io.IOException;
-import java.nio.file.Files;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Base64;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 
 @Service
@@ -30,23 +25,51 @@ public class LevelThreeRetrievalService {
     //Logging
     private static final Logger logger = LoggerFactory.getLogger(LevelThreeRetrievalService.class);
 
-    private static final Pattern DATE_PATTERN = Pattern.compile("_(\\d{8}T\\d{6})Z_");
-    private static final double INVALID_VALUE = -1E30;
-    private static final int ALPHA = 128;
-
-    private final PythonScheduler pythonScheduler;
-
-    public LevelThreeRetrievalService(PythonScheduler pythonScheduler) {
-        this.pythonScheduler = pythonScheduler;
+    private final LevelThreeGranuleCatalog levelThreeGranuleCatalog;
+    private final LevelThreeGridCache levelThreeGridCache;
+    private final LevelThreeMercatorReprojector levelThreeMercatorReprojector;
+    private final LevelThreeArtifactCache levelThreeArtifactCache;
+    private final boolean approximatePercentiles;
+    private final double percentileMaxRelativeError;
+    private final int sketchBins;
+
+    // Full-grid renders of catalog granules only depend on the request parameters, so they are kept once computed
+    private final Cache<FullRenderKey, LevelThreeData> fullRenders;
+
+    private record FullRenderKey(String path, int scaleFactor, LevelThreeQualityFilter filter, LevelThreeProjection projection) {}
+
+    // Everything besides the granule that changes a full-grid render
+    private record RenderParams(int scaleFactor, LevelThreeQualityFilter filter, LevelThreeProjection projection,
+                                boolean approximatePercentiles, double percentileMaxRelativeError, int sketchBins) {}
+
+    public LevelThreeRetrievalService(
+            LevelThreeGranuleCatalog levelThreeGranuleCatalog,
+            LevelThreeGridCache levelThreeGridCache,
+            LevelThreeMercatorReprojector levelThreeMercatorReprojector,
+            LevelThreeArtifactCache levelThreeArtifactCache,
+            @Value("${levelthree.percentile.approximate}") boolean approximatePercentiles,
+            @Value("${levelthree.percentile.max-relative-error}") double percentileMaxRelativeError,
+            @Value("${levelthree.percentile.sketch-bins}") int sketchBins,
+            @Value("${levelthree.render-cache.max-entries}") int renderCacheMaxEntries) {
+        this.levelThreeGranuleCatalog = levelThreeGranuleCatalog;
+        this.levelThreeGridCache = levelThreeGridCache;
+        this.levelThreeMercatorReprojector = levelThreeMercatorReprojector;
+        this.levelThreeArtifactCache = levelThreeArtifactCache;
+        this.approximatePercentiles = approximatePercentiles;
+        this.percentileMaxRelativeError = percentileMaxRelativeError;
+        this.sketchBins = sketchBins;
+        this.fullRenders = CacheBuilder.newBuilder()
+                .maximumSize(renderCacheMaxEntries)
+                .build();
     }
 
-    public LevelThreeData retrieveLatest(float lat1, float lat2, float lon1, float lon2) {
+    public LevelThreeData retrieveLatest(float lat1, float lat2, float lon1, float lon2, LevelThreeQualityFilter filter, LevelThreeProjection projection) {
         logger.info("Retrieving Level Three Data");
 
         List<String> tempoFiles;
 
         try {
-            tempoFiles = getTempoFiles();
+            tempoFiles = levelThreeGranuleCatalog.getTempoFiles();
         } catch (IOException e) {
             logger.error("IO Exception when attempting to retrieve tempo files: {}", e.getMessage());
             throw new RuntimeException(e);
@@ -56,10 +79,8 @@ public class LevelThreeRetrievalService {
             throw new RuntimeException("No tempo files found");
         }
 
-        logger.debug("Reading file: {}", tempoFiles.get(0));
-
-        try (NetcdfFile ncFile = NetcdfFiles.open(tempoFiles.get(0))) {
-            return getLevelThreeData(ncFile, lat1, lat2, lon1, lon2);
+        try {
+            return retrieveRegion(tempoFiles.get(0), new LevelThreeBoundingBox(lat1, lat2, lon1, lon2), filter, projection);
         } catch (IOException e) {
             logger.error("IO Exception when attempting to retrieve LevelThreeData from tempo file: {}", e.getMessage());
             throw new RuntimeException(e);
@@ -67,13 +88,13 @@ public class LevelThreeRetrievalService {
 
     }
 
-    public List<LevelThreeData> retrieveNLatest(float lat1, float lat2, float lon1, float lon2, int n) {
+    public List<LevelThreeData> retrieveNLatest(float lat1, float lat2, float lon1, float lon2, int n, LevelThreeQualityFilter filter, LevelThreeProjection projection) {
         logger.info("Retrieving last {} samples of Level Three Data", n);
 
         List<String> tempoFiles;
 
         try {
-            tempoFiles = getTempoFiles();
+            tempoFiles = levelThreeGranuleCatalog.getTempoFiles();
         } catch (IOException e) {
             logger.error("IO Exception when attempting to retrieve tempo files: {}", e.getMessage());
             throw new RuntimeException(e);
@@ -92,10 +113,8 @@ public class LevelThreeRetrievalService {
                 return levelThreeData;
             }
 
-            logger.debug("Reading file: {}", tempoFiles.get(i));
-
-            try (NetcdfFile ncFile = NetcdfFiles.open(tempoFiles.get(i))) {
-                levelThreeData.add(getLevelThreeData(ncFile, lat1, lat2, lon1, lon2));
+            try {
+                levelThreeData.add(retrieveRegion(tempoFiles.get(i), new LevelThreeBoundingBox(lat1, lat2, lon1, lon2), filter, projection));
             } catch (IOException e) {
                 logger.error("IO Exception when attempting to retrieve LevelThreeData from tempo files: {}", e.getMessage());
                 throw new RuntimeException(e);
@@ -105,13 +124,13 @@ public class LevelThreeRetrievalService {
         return levelThreeData;
     }
 
-    public LevelThreeData retrieveLatestFullDownscaled(int scaleFactor) {
+    public LevelThreeData retrieveLatestFullDownscaled(int scaleFactor, LevelThreeQualityFilter filter, LevelThreeProjection projection) {
         logger.info("Retrieving full Level Three Data with scale factor {}", scaleFactor);
 
         List<String> tempoFiles;
 
         try {
-            tempoFiles = getTempoFiles();
+            tempoFiles = levelThreeGranuleCatalog.getTempoFiles();
         } catch (IOException e) {
             logger.error("IO Exception when attempting to retrieve tempo files: {}", e.getMessage());
             throw new RuntimeException(e);
@@ -121,23 +140,16 @@ public class LevelThreeRetrievalService {
             throw new RuntimeException("No tempo files found");
         }
 
-        logger.debug("Reading file: {}", tempoFiles.get(0));
-
-        try (NetcdfFile ncFile = NetcdfFiles.open(tempoFiles.get(0))) {
-            return getFullLevelThreeDataDownscaled(ncFile, scaleFactor);
-        } catch (IOException e) {
-            logger.error("IO Exception when attempting to retrieve full LevelThreeData from tempo file: {}", e.getMessage());
-            throw new RuntimeException(e);
-        }
+        return retrieveFullDownscaled(tempoFiles.get(0), scaleFactor, filter, projection);
     }
 
-    public List<LevelThreeData> retrieveNLatestFullDownscaled(int n, int scaleFactor) {
+    public List<LevelThreeData> retrieveNLatestFullDownscaled(int n, int scaleFactor, LevelThreeQualityFilter filter, LevelThreeProjection projection) {
         logger.info("Retrieving last {} samples of full Level Three Data with scale factor {}", n, scaleFactor);
 
         List<String> tempoFiles;
 
         try {
-            tempoFiles = getTempoFiles();
+            tempoFiles = levelThreeGranuleCatalog.getTempoFiles();
         } catch (IOException e) {
             logger.error("IO Exception when attempting to retrieve tempo files: {}", e.getMessage());
             throw new RuntimeException(e);
@@ -156,262 +168,381 @@ public class LevelThreeRetrievalService {
                 return levelThreeData;
             }
 
-            logger.debug("Reading file: {}", tempoFiles.get(i));
-
-            try (NetcdfFile ncFile = NetcdfFiles.open(tempoFiles.get(i))) {
-                levelThreeData.add(getFullLevelThreeDataDownscaled(ncFile, scaleFactor));
-            } catch (IOException e) {
-                logger.error("IO Exception when attempting to retrieve full LevelThreeData from tempo files: {}", e.getMessage());
-                throw new RuntimeException(e);
-            }
+            levelThreeData.add(retrieveFullDownscaled(tempoFiles.get(i), scaleFactor, filter, projection));
         }
 
         return levelThreeData;
     }
 
-    private List<String> getTempoFiles() throws IOException {
-        // Python temp folder location
-        Path pythonTempDir = pythonScheduler.getPythonScriptPath().getParent().resolve("tempo_data");
+    /**
+     * Renders one catalog granule in full, reusing an earlier render with the same parameters if there is one, from
+     * memory or from the shared artifact cache.
+     */
+    public LevelThreeData retrieveFullDownscaled(String path, int scaleFactor, LevelThreeQualityFilter filter, LevelThreeProjection projection) {
+        try {
+            return fullRenders.get(new FullRenderKey(path, scaleFactor, filter, projection),
+                    () -> levelThreeArtifactCache.getOrCompute(LevelThreeGranuleCatalog.granuleIdOf(path), "full",
+                            renderParams(scaleFactor, filter, projection), LevelThreeData.class,
+                            () -> getFullLevelThreeDataDownscaled(levelThreeGridCache.get(path), scaleFactor, filter, projection)));
+        } catch (ExecutionException e) {
+            logger.error("IO Exception when attempting to retrieve full LevelThreeData from tempo file: {}", e.getCause().getMessage());
+            throw new RuntimeException(e.getCause());
+        } catch (UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
 
-        // Resources folder location
-        Path resourcesDir = Paths.get("src/main/resources/tempoData/NO2_L3");
+    @EventListener
+    public void onGranulesRemoved(GranulesRemovedEvent event) {
+        Set<String> removed = event.granules().stream().map(Path::toString).collect(Collectors.toSet());
+        fullRenders.asMap().keySet().removeIf(key -> removed.contains(key.path()));
+    }
 
-        logger.debug("Checking Python temp directory: {}", pythonTempDir);
-        logger.debug("Checking resources directory: {}", resourcesDir);
+    /**
+     * Computes stats and images for many bounding boxes against the latest granule. The granule is resolved once and
+     * the regions are then processed in parallel, so the cost scales with the total area covered rather than with the
+     * number of boxes.
+     */
+    public List<LevelThreeData> retrieveLatestBatch(List<LevelThreeBoundingBox> boxes, LevelThreeQualityFilter filter, LevelThreeProjection projection) {
+        logger.info("Retrieving Level Three Data for {} regions", boxes.size());
 
-        List<String> allFiles = new ArrayList<>();
+        List<String> tempoFiles;
 
-        // Add files from Python temp directory if it exists (priority location)
-        if (Files.exists(pythonTempDir) && Files.isDirectory(pythonTempDir)) {
-            List<String> pythonFiles = Files.list(pythonTempDir)
-                    .filter(Files::isRegularFile)
-                    .map(Path::toString)
-                    .filter(name -> name.endsWith(".nc"))
-                    .toList();
-            allFiles.addAll(pythonFiles);
-            logger.debug("Found {} files in Python temp directory", pythonFiles.size());
-        } else {
-            logger.debug("Python temp directory does not exist or is not a directory");
+        try {
+            tempoFiles = levelThreeGranuleCatalog.getTempoFiles();
+        } catch (IOException e) {
+            logger.error("IO Exception when attempting to retrieve tempo files: {}", e.getMessage());
+            throw new RuntimeException(e);
         }
 
-        // Track filenames from Python directory to avoid duplicates
-        java.util.Set<String> pythonFileNames = allFiles.stream()
-                .map(path -> Paths.get(path).getFileName().toString())
-                .collect(Collectors.toSet());
-
-        // Add files from resources directory if it exists (only if not in Python directory)
-        if (Files.exists(resourcesDir) && Files.isDirectory(resourcesDir)) {
-            List<String> resourceFiles = Files.list(resourcesDir)
-                    .filter(Files::isRegularFile)
-                    .filter(path -> path.toString().endsWith(".nc"))
-                    .filter(path -> !pythonFileNames.contains(path.getFileName().toString()))
-                    .map(Path::toString)
-                    .toList();
-            allFiles.addAll(resourceFiles);
-            logger.debug("Found {} unique files in resources directory (excluding duplicates)", resourceFiles.size());
-        } else {
-            logger.debug("Resources directory does not exist or is not a directory");
+        if(tempoFiles.isEmpty()) {
+            throw new RuntimeException("No tempo files found");
         }
 
-        // Sort all files by date
-        return allFiles.stream()
-                .sorted(Comparator.comparing(LevelThreeRetrievalService::extractDateString).reversed())
-                .collect(Collectors.toList());
+        String path = tempoFiles.get(0);
+
+        try {
+            return boxes.parallelStream()
+                    .map(box -> {
+                        try {
+                            return retrieveRegion(path, box, filter, projection);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    })
+                    .toList();
+        } catch (UncheckedIOException e) {
+            logger.error("IO Exception when attempting to retrieve LevelThreeData from tempo file: {}", e.getCause().getMessage());
+            throw new RuntimeException(e.getCause());
+        }
     }
 
-    private LevelThreeData getLevelThreeData(NetcdfFile ncFile, float lat1, float lat2, float lon1, float lon2) throws IOException {
-        logger.trace("Finished opening file");
+    /**
+     * Renders an already decoded grid (e.g. a composite) for a bounding box, the same way as {@link #retrieveLatest}.
+     */
+    public LevelThreeData renderRegion(LevelThreeGrid grid, LevelThreeBoundingBox box, LevelThreeProjection projection) {
+        try {
+            return getLevelThreeData(grid, box, LevelThreeQualityFilter.NONE, projection);
+        } catch (IOException e) {
+            logger.error("IO Exception when attempting to render LevelThreeData for {}: {}", grid.granuleId(), e.getMessage());
+            throw new RuntimeException(e);
+        }
+    }
 
-        logger.debug("Tempo files: {}", getTempoFiles());
+    /**
+     * Renders an already decoded grid (e.g. a composite) in full, the same way as {@link #retrieveLatestFullDownscaled}.
+     */
+    public LevelThreeData renderFullDownscaled(LevelThreeGrid grid, int scaleFactor, LevelThreeProjection projection) {
+        try {
+            return getFullLevelThreeDataDownscaled(grid, scaleFactor, LevelThreeQualityFilter.NONE, projection);
+        } catch (IOException e) {
+            logger.error("IO Exception when attempting to render full LevelThreeData for {}: {}", grid.granuleId(), e.getMessage());
+            throw new RuntimeException(e);
+        }
+    }
 
-        // Get latitudes
-        Variable latVar = ncFile.findVariable("latitude");
-        float[] lats = (float[]) latVar.read().copyTo1DJavaArray();
+    /**
+     * Renders a bounding box of one catalog granule. Regions are not stored in the artifact cache: boxes rarely repeat
+     * exactly, so a disk read and write per box would cost more than the render from the grid cache.
+     */
+    private LevelThreeData retrieveRegion(String path, LevelThreeBoundingBox box, LevelThreeQualityFilter filter, LevelThreeProjection projection) throws IOException {
+        return getLevelThreeData(levelThreeGridCache.get(path), box, filter, projection);
+    }
 
-        // Get longitudes
-        Variable lonVar = ncFile.findVariable("longitude");
-        float[] lons = (float[]) lonVar.read().copyTo1DJavaArray();
+    private RenderParams renderParams(int scaleFactor, LevelThreeQualityFilter filter, LevelThreeProjection projection) {
+        return new RenderParams(scaleFactor, filter, projection, approximatePercentiles, percentileMaxRelativeError, sketchBins);
+    }
 
+    private LevelThreeData getLevelThreeData(LevelThreeGrid grid, LevelThreeBoundingBox box, LevelThreeQualityFilter filter, LevelThreeProjection projection) throws IOException {
         long start = System.currentTimeMillis();
 
-        // Read the whole 3D variable for the NO2 data (very large dataset - need a subset)
-        Variable prodVar = ncFile.findVariable("vertical_column_total");
-        Array data = prodVar.read();
-
-        logger.debug("Getting data in latitude range {} to {} and longitude range {} to {}", lat1, lat2, lon1, lon2);
-
-        Index idx = data.getIndex();
-
-        int latsInRange = 0;
-        int lonsInRange = 0;
-
-        int firstLatInRangeIdx = -1;
-        int firstLonInRangeIdx = -1;
-
-        double centerNo2Value = -1;
+        logger.debug("Getting data in latitude range {} to {} and longitude range {} to {}", box.lat1(), box.lat2(), box.lon1(), box.lon2());
 
-        // Collect all valid values in bounding box for percentile calculation
-        List<Double> validValues = new ArrayList<>();
-        for (int i = 0; i < lats.length; i++) {
-            if (lats[i] >= lat1 && lats[i] <= lat2) {
+        LevelThreeGrid.IndexRange latRange = LevelThreeGrid.rangeOf(grid.lats(), box.lat1(), box.lat2());
+        LevelThreeGrid.IndexRange lonRange = LevelThreeGrid.rangeOf(grid.lons(), box.lon1(), box.lon2());
 
-                if(firstLatInRangeIdx == -1){
-                    firstLatInRangeIdx = i;
-                }
-
-                latsInRange++;
-
-                for (int j = 0; j < lons.length; j++) {
-                    if (lons[j] >= lon1 && lons[j] <= lon2) {
-                        if(firstLonInRangeIdx == -1){
-                            firstLonInRangeIdx = j;
-                        }
-
-                        lonsInRange++;
-
-                        double v = data.getDouble(idx.set(0, i, j));
-                        if (v != INVALID_VALUE) {
-                            validValues.add(v);
-                        }
-                    }
-                }
-            }
+        if (latRange.isEmpty() || lonRange.isEmpty()) {
+            throw new IllegalArgumentException("Bounding box " + box + " does not contain any grid cells");
         }
 
-        PercentileRange range = calculatePercentileRange(validValues);
-
-        int centerLatIndex = latsInRange / 2;
-        lonsInRange /= latsInRange;
-        int centerLonIndex = lonsInRange / 2;
+        int centerLatIndex = latRange.count() / 2;
+        int centerLonIndex = lonRange.count() / 2;
 
-        logger.debug("Total lat values: {}", lats.length);
-        logger.debug("First lat in range at index: {}", firstLatInRangeIdx);
-        logger.debug("Lat values in range: {}", latsInRange);
+        logger.debug("Total lat values: {}", grid.rows());
+        logger.debug("First lat in range at index: {}", latRange.first());
+        logger.debug("Lat values in range: {}", latRange.count());
 
-        logger.debug("Total lon values: {}", lons.length);
-        logger.debug("First lon in range at index: {}", firstLonInRangeIdx);
-        logger.debug("Lon values in range: {}", lonsInRange);
+        logger.debug("Total lon values: {}", grid.cols());
+        logger.debug("First lon in range at index: {}", lonRange.first());
+        logger.debug("Lon values in range: {}", lonRange.count());
 
         logger.debug("Center lat index: {}", centerLatIndex);
         logger.debug("Center lon index: {}", centerLonIndex);
 
-        // 2. Build image: width = lon range, height = lat range
-        int height = latsInRange;
-        int width = lonsInRange;
-        BufferedImage bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-
-        // 3. Fill image
-        for (int i = firstLatInRangeIdx; i < (height + firstLatInRangeIdx); i++) {
-            for (int j = firstLonInRangeIdx; j < (width + firstLonInRangeIdx); j++) {
-                double no2Value = data.getDouble(idx.set(0, i, j));
-
-                if(Double.compare(i, (firstLatInRangeIdx + centerLatIndex)) == 0 && Double.compare(j, (firstLonInRangeIdx + centerLonIndex)) == 0){
-                    centerNo2Value = no2Value;
-                }
-
-                int y = height - 1 - (i - firstLatInRangeIdx);
-                int x = j - firstLonInRangeIdx;
+        int centerRow = latRange.first() + centerLatIndex;
+        int centerCol = lonRange.first() + centerLonIndex;
+        double centerNo2Value = grid.value(centerRow, centerCol);
 
-                // Handle missing or invalid values
-                if (no2Value == INVALID_VALUE) {
-                    bufferedImage.setRGB(x, y, 0);
-                    continue;
-                }
-
-                int argb = calculateColorARGB(no2Value, range.min, range.max);
-                bufferedImage.setRGB(x, y, argb);
-            }
+        // A centre cell rejected by the quality filter is reported like fill
+        if (filter.isActive() && !filter.maskFor(grid).accepts(centerRow * grid.cols() + centerCol)) {
+            centerNo2Value = LevelThreeGrid.INVALID_VALUE;
         }
 
+        RenderedWindow window = project(renderWindow(grid, latRange, lonRange, 1, filter), grid, latRange, lonRange, 1, projection);
+
         logger.debug("Center NO2 value: {}", centerNo2Value);
 
-        String base64Image = encodeImageToBase64(bufferedImage);
+        String base64Image = LevelThreeImages.encodeToBase64Png(window.pixels(), window.width(), window.height());
 
         long end = System.currentTimeMillis();
 
         logger.debug("Time taken: {} ms", end - start);
 
         logger.trace("Finished retrieving data");
-        return new LevelThreeData(range.min, range.max, centerNo2Value, base64Image);
+        return new LevelThreeData(window.range().min, window.range().max, centerNo2Value, base64Image);
     }
 
-    private LevelThreeData getFullLevelThreeDataDownscaled(NetcdfFile ncFile, int scaleFactor) throws IOException {
+    private LevelThreeData getFullLevelThreeDataDownscaled(LevelThreeGrid grid, int scaleFactor, LevelThreeQualityFilter filter, LevelThreeProjection projection) throws IOException {
         logger.trace("Processing full dataset with downscaling");
 
-        // Get latitudes
-        Variable latVar = ncFile.findVariable("latitude");
-        float[] lats = (float[]) latVar.read().copyTo1DJavaArray();
+        long start = System.currentTimeMillis();
 
-        // Get longitudes
-        Variable lonVar = ncFile.findVariable("longitude");
-        float[] lons = (float[]) lonVar.read().copyTo1DJavaArray();
+        logger.debug("Processing full dataset: {} x {} points", grid.rows(), grid.cols());
 
-        long start = System.currentTimeMillis();
+        LevelThreeGrid.IndexRange rowRange = new LevelThreeGrid.IndexRange(0, grid.rows());
+        LevelThreeGrid.IndexRange colRange = new LevelThreeGrid.IndexRange(0, grid.cols());
+        RenderedWindow window = project(renderWindow(grid,
+                rowRange,
+                colRange,
+                scaleFactor,
+                filter), grid, rowRange, colRange, scaleFactor, projection);
 
-        // Read the whole 3D variable for the NO2 data
-        Variable prodVar = ncFile.findVariable("vertical_column_total");
-        Array data = prodVar.read();
+        logger.debug("Downscaled image dimensions: {} x {}", window.width(), window.height());
 
-        logger.debug("Processing full dataset: {} x {} points", lats.length, lons.length);
+        String base64Image = LevelThreeImages.encodeToBase64Png(window.pixels(), window.width(), window.height());
 
-        Index idx = data.getIndex();
+        long end = System.currentTimeMillis();
+        logger.debug("Time taken: {} ms", end - start);
+
+        logger.trace("Finished retrieving full downscaled data");
+        return new LevelThreeData(window.range().min, window.range().max, -1, base64Image);
+    }
+
+    /**
+     * Computes the colour range and pixels for a window of the grid, sampling every {@code step}-th row and column
+     * from the window origin. The image is north up, so grid row {@code rowRange.first()} is the bottom pixel row.
+     * <p>
+     * The colour range comes from the tile sketches when they are accurate enough, otherwise from an exact pass.
+     * An active quality filter is applied inside both passes, reading value, flag and uncertainty at the same index,
+     * and always uses the exact pass.
+     * Both passes walk the grid tile by tile: tiles with no valid cells are skipped, fully valid tiles are read
+     * without per-cell fill checks, and fully valid tiles lying entirely outside the colour range are filled with
+     * their clamped colour without reading the cells again.
+     */
+    private RenderedWindow renderWindow(LevelThreeGrid grid, LevelThreeGrid.IndexRange rowRange, LevelThreeGrid.IndexRange colRange, int step, LevelThreeQualityFilter filter) {
+        LevelThreeTileIndex tiles = grid.tileIndex();
+        double[] values = grid.values();
+        int cols = grid.cols();
+        int tileSize = LevelThreeTileIndex.TILE_SIZE;
+
+        int height = (rowRange.count() + step - 1) / step;
+        int width = (colRange.count() + step - 1) / step;
+
+        int firstTileRow = rowRange.first() / tileSize;
+        int lastTileRow = (rowRange.end() - 1) / tileSize;
+        int firstTileCol = colRange.first() / tileSize;
+        int lastTileCol = (colRange.end() - 1) / tileSize;
+
+        // Quality filtering is fused into the passes below; the sketches only describe unfiltered data
+        LevelThreeQualityFilter.Mask mask = filter.isActive() ? filter.maskFor(grid) : null;
+
+        PercentileRange range = approximatePercentiles && mask == null ? estimatePercentileRange(grid, rowRange, colRange) : null;
+
+        if (range == null) {
+            range = exactPercentileRange(grid, rowRange, colRange, step, mask);
+        }
+
+        // Fill pixels; missing or invalid values stay transparent
+        boolean canClamp = range.max > range.min;
+        int lowColor = calculateColorARGB(range.min, range.min, range.max);
+        int highColor = calculateColorARGB(range.max, range.min, range.max);
+
+        int[] pixels = new int[width * height];
+        for (int tr = firstTileRow; tr <= lastTileRow; tr++) {
+            int r0 = firstSample(Math.max(tr * tileSize, rowRange.first()), rowRange.first(), step);
+            int r1 = Math.min((tr + 1) * tileSize, rowRange.end());
+            for (int tc = firstTileCol; tc <= lastTileCol; tc++) {
+                if (tiles.isEmpty(tr, tc)) {
+                    continue;
+                }
+                int c0 = firstSample(Math.max(tc * tileSize, colRange.first()), colRange.first(), step);
+                int c1 = Math.min((tc + 1) * tileSize, colRange.end());
+                if (c0 >= c1) {
+                    continue;
+                }
+
+                boolean full = mask == null && tiles.isFull(tr, tc);
+                int constantColor = 0;
+                if (full && canClamp && tiles.max(tr, tc) <= range.min) {
+                    constantColor = lowColor;
+                } else if (full && canClamp && tiles.min(tr, tc) >= range.max) {
+                    constantColor = highColor;
+                }
 
-        // Collect all valid values for percentile calculation
-        List<Double> validValues = new ArrayList<>();
-        for (int i = 0; i < lats.length; i += scaleFactor) {
-            for (int j = 0; j < lons.length; j += scaleFactor) {
-                double v = data.getDouble(idx.set(0, i, j));
-                if (v != INVALID_VALUE) {
-                    validValues.add(v);
+                for (int i = r0; i < r1; i += step) {
+                    int rowOffset = i * cols;
+                    int pixelOffset = (height - 1 - (i - rowRange.first()) / step) * width;
+                    for (int j = c0; j < c1; j += step) {
+                        int x = (j - colRange.first()) / step;
+                        if (constantColor != 0) {
+                            pixels[pixelOffset + x] = constantColor;
+                            continue;
+                        }
+                        double no2Value = values[rowOffset + j];
+                        if (mask != null ? mask.accepts(rowOffset + j) : full || LevelThreeGrid.isValid(no2Value)) {
+                            pixels[pixelOffset + x] = calculateColorARGB(no2Value, range.min, range.max);
+                        }
+                    }
                 }
             }
         }
 
-        PercentileRange range = calculatePercentileRange(validValues);
+        return new RenderedWindow(range, pixels, width, height);
+    }
+
+    /**
+     * Resamples a rendered window to the requested output projection; the native projection is returned as is.
+     * Bilinear samples blend the two source values and colour the result with the window's range.
+     */
+    private RenderedWindow project(RenderedWindow window, LevelThreeGrid grid, LevelThreeGrid.IndexRange rowRange,
+                                   LevelThreeGrid.IndexRange colRange, int step, LevelThreeProjection projection) {
+        if (!projection.isMercator()) {
+            return window;
+        }
 
-        // Build downscaled image
-        int height = (lats.length + scaleFactor - 1) / scaleFactor;
-        int width = (lons.length + scaleFactor - 1) / scaleFactor;
+        double[] values = grid.values();
+        int cols = grid.cols();
+        int height = window.height();
+        PercentileRange range = window.range();
 
-        logger.debug("Downscaled image dimensions: {} x {}", width, height);
+        // Pixel row p is grid row rowRange.first() + (height - 1 - p) * step
+        LevelThreeMercatorReprojector.PixelBlender blender = (row0, row1, x, weight) -> {
+            int col = colRange.first() + x * step;
+            double v0 = values[(rowRange.first() + (height - 1 - row0) * step) * cols + col];
+            double v1 = values[(rowRange.first() + (height - 1 - row1) * step) * cols + col];
+            return calculateColorARGB(v0 + (v1 - v0) * weight, range.min, range.max);
+        };
 
-        BufferedImage bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        int[] pixels = levelThreeMercatorReprojector.reproject(window.pixels(), window.width(), window.height(),
+                grid.lats(), rowRange.first(), step, projection.interpolation(), blender);
 
-        // Fill image with downscaled data
-        for (int i = 0; i < lats.length; i += scaleFactor) {
-            for (int j = 0; j < lons.length; j += scaleFactor) {
-                double no2Value = data.getDouble(idx.set(0, i, j));
+        return new RenderedWindow(window.range(), pixels, window.width(), pixels.length / window.width());
+    }
 
-                int y = height - 1 - (i / scaleFactor);
-                int x = j / scaleFactor;
+    /**
+     * Approximates the 5th/95th percentiles by merging the precomputed tile sketches covered by the window, or
+     * returns null if the sketch can't meet the configured error bound.
+     */
+    private PercentileRange estimatePercentileRange(LevelThreeGrid grid, LevelThreeGrid.IndexRange rowRange, LevelThreeGrid.IndexRange colRange) {
+        double[] estimate = grid.quantileSketch().estimate(grid, rowRange, colRange, 0.05, 0.95, percentileMaxRelativeError);
 
-                if (x >= width || y < 0) continue;
+        if (estimate == null) {
+            logger.debug("Percentile sketch outside error bound, falling back to exact calculation");
+            return null;
+        }
 
-                // Handle missing or invalid values
-                if (no2Value == INVALID_VALUE) {
-                    bufferedImage.setRGB(x, y, 0);
+        logger.debug("Estimated 5th percentile value: {}", estimate[0]);
+        logger.debug("Estimated 95th percentile value: {}", estimate[1]);
+
+        return new PercentileRange(estimate[0], estimate[1]);
+    }
+
+    private PercentileRange exactPercentileRange(LevelThreeGrid grid, LevelThreeGrid.IndexRange rowRange, LevelThreeGrid.IndexRange colRange, int step,
+                                                 LevelThreeQualityFilter.Mask mask) {
+        LevelThreeTileIndex tiles = grid.tileIndex();
+        double[] values = grid.values();
+        int cols = grid.cols();
+        int tileSize = LevelThreeTileIndex.TILE_SIZE;
+
+        int height = (rowRange.count() + step - 1) / step;
+        int width = (colRange.count() + step - 1) / step;
+
+        int firstTileRow = rowRange.first() / tileSize;
+        int lastTileRow = (rowRange.end() - 1) / tileSize;
+        int firstTileCol = colRange.first() / tileSize;
+        int lastTileCol = (colRange.end() - 1) / tileSize;
+
+        // Collect all valid sampled values for percentile calculation
+        double[] validValues = new double[width * height];
+        int validCount = 0;
+        for (int tr = firstTileRow; tr <= lastTileRow; tr++) {
+            int r0 = firstSample(Math.max(tr * tileSize, rowRange.first()), rowRange.first(), step);
+            int r1 = Math.min((tr + 1) * tileSize, rowRange.end());
+            for (int tc = firstTileCol; tc <= lastTileCol; tc++) {
+                if (tiles.isEmpty(tr, tc)) {
                     continue;
                 }
-
-                int argb = calculateColorARGB(no2Value, range.min, range.max);
-                bufferedImage.setRGB(x, y, argb);
+                int c0 = firstSample(Math.max(tc * tileSize, colRange.first()), colRange.first(), step);
+                int c1 = Math.min((tc + 1) * tileSize, colRange.end());
+                if (c0 >= c1) {
+                    continue;
+                }
+                boolean full = mask == null && tiles.isFull(tr, tc);
+                for (int i = r0; i < r1; i += step) {
+                    int rowOffset = i * cols;
+                    if (full && step == 1) {
+                        System.arraycopy(values, rowOffset + c0, validValues, validCount, c1 - c0);
+                        validCount += c1 - c0;
+                        continue;
+                    }
+                    for (int j = c0; j < c1; j += step) {
+                        double v = values[rowOffset + j];
+                        if (mask != null ? mask.accepts(rowOffset + j) : full || LevelThreeGrid.isValid(v)) {
+                            validValues[validCount++] = v;
+                        }
+                    }
+                }
             }
         }
 
-        String base64Image = encodeImageToBase64(bufferedImage);
-
-        long end = System.currentTimeMillis();
-        logger.debug("Time taken: {} ms", end - start);
+        return calculatePercentileRange(validValues, validCount);
+    }
 
-        logger.trace("Finished retrieving full downscaled data");
-        return new LevelThreeData(range.min, range.max, -1, base64Image);
+    /**
+     * First index at or after {@code from} that lies on the sampling lattice {@code origin + k * step}.
+     */
+    private static int firstSample(int from, int origin, int step) {
+        int offset = from - origin;
+        return origin + ((offset + step - 1) / step) * step;
     }
 
-    private PercentileRange calculatePercentileRange(List<Double> validValues) {
-        validValues.sort(Double::compareTo);
-        int size = validValues.size();
-        double min = size > 0 ? validValues.get((int)(size * 0.05)) : 0;
-        double max = size > 0 ? validValues.get((int)(size * 0.95)) : 1;
+    private PercentileRange calculatePercentileRange(double[] validValues, int size) {
+        Arrays.sort(validValues, 0, size);
+        double min = size > 0 ? validValues[(int)(size * 0.05)] : 0;
+        double max = size > 0 ? validValues[(int)(size * 0.95)] : 1;
 
         logger.debug("5th percentile value: {}", min);
         logger.debug("95th percentile value: {}", max);
@@ -437,24 +568,11 @@ public class LevelThreeRetrievalService {
         }
 
         int rgb = (red << 16) | (green << 8) | blue;
-        return (ALPHA << 24) | rgb;
-    }
-
-    private String encodeImageToBase64(BufferedImage bufferedImage) throws IOException {
-        byte[] imageBytes;
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-            ImageIO.write(bufferedImage, "png", baos);
-            baos.flush();
-            imageBytes = baos.toByteArray();
-        }
-        return Base64.getEncoder().encodeToString(imageBytes);
-    }
-
-    private static String extractDateString(String path) {
-        Matcher m = DATE_PATTERN.matcher(path);
-        return m.find() ? m.group(1) : "";
+        return (LevelThreeImages.ALPHA << 24) | rgb;
     }
 
     private record PercentileRange(double min, double max) {}
 
+    private record RenderedWindow(PercentileRange range, int[] pixels, int width, int height) {}
+
 }
@@ -0,0 +1,308 @@
+package org.chrisbarbati.spaceapps2025backend.levelthreedata;
+
+import org.slf4j.*;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Running per-cell sum and count over the granules in a sliding time window. New granules are added and granules
+ * that fall out of the window are subtracted, so keeping the mean map current costs one pass per changed granule
+ * rather than a re-read of the whole window.
+ * <p>
+ * The sums are only changed by the owning service's update thread. After every change the mean grid, with its tile
+ * index and sketch, is built straight away and published as an immutable {@link Snapshot}, so readers never wait for
+ * an update and the first request after one doesn't pay for the build.
+ */
+public class LevelThreeRollingComposite {
+
+    //Logging
+    private static final Logger logger = LoggerFactory.getLogger(LevelThreeRollingComposite.class);
+
+    private static final int CHECKPOINT_MAGIC = 0x4C33434D;
+    private static final int CHECKPOINT_VERSION = 1;
+
+    private final int windowHours;
+    private final int sketchBins;
+
+    private float[] lats;
+    private float[] lons;
+    private double[] sum;
+    private int[] count;
+
+    // Granule ID -> scan time of every granule currently folded into the sums
+    private final Map<String, Instant> included = new LinkedHashMap<>();
+
+    private volatile Snapshot snapshot;
+
+    public LevelThreeRollingComposite(int windowHours, int sketchBins) {
+        this.windowHours = windowHours;
+        this.sketchBins = sketchBins;
+    }
+
+    public int windowHours() {
+        return windowHours;
+    }
+
+    @FunctionalInterface
+    public interface GridLoader {
+        LevelThreeGrid load(String path) throws IOException;
+    }
+
+    public record Snapshot(LevelThreeGrid meanGrid, int windowHours, int granuleCount, Instant newestGranuleInstant) {}
+
+    /**
+     * Brings the sums in line with the catalog: granules newer than {@code newest - windowHours} are added and
+     * anything older is subtracted. Granules already in the sums stay there until they expire, even if they are no
+     * longer listed, so sums restored from a checkpoint survive a restart into an empty or different data directory.
+     * Only if an expired granule can no longer be read are the sums rebuilt from the listed granules in the window.
+     *
+     * @return true if the composite changed
+     */
+    public synchronized boolean update(List<String> granulesNewestFirst, GridLoader loader) throws IOException {
+        Map<String, String> pathsById = new HashMap<>();
+        Map<String, Instant> listed = new LinkedHashMap<>();
+        for (String path : granulesNewestFirst) {
+            Instant time = LevelThreeGranuleCatalog.granuleTime(path);
+            if (time != null) {
+                String granuleId = LevelThreeGranuleCatalog.granuleIdOf(path);
+                pathsById.put(granuleId, path);
+                listed.put(granuleId, time);
+            }
+        }
+
+        // The window ends at the newest granule either listed or already folded in
+        Instant newest = Stream.concat(listed.values().stream(), included.values().stream())
+                .max(Instant::compareTo).orElse(null);
+        if (newest == null) {
+            return false;
+        }
+        Instant cutoff = newest.minus(Duration.ofHours(windowHours));
+
+        Map<String, Instant> wanted = new LinkedHashMap<>();
+        listed.forEach((granuleId, time) -> {
+            if (time.isAfter(cutoff)) {
+                wanted.put(granuleId, time);
+            }
+        });
+
+        List<String> toRemove = included.entrySet().stream()
+                .filter(entry -> !entry.getValue().isAfter(cutoff))
+                .map(Map.Entry::getKey)
+                .toList();
+        List<String> toAdd = wanted.keySet().stream().filter(id -> !included.containsKey(id)).toList();
+
+        if (toRemove.isEmpty() && toAdd.isEmpty()) {
+            return false;
+        }
+
+        boolean rebuild = toRemove.stream().anyMatch(id -> !pathsById.containsKey(id));
+        if (rebuild) {
+            logger.info("{}h composite: expired granule no longer available, rebuilding from {} granules", windowHours, wanted.size());
+            reset();
+        }
+
+        if (!rebuild) {
+            for (String granuleId : toRemove) {
+                LevelThreeGrid grid = loader.load(pathsById.get(granuleId));
+                accumulate(grid, -1);
+                included.remove(granuleId);
+                logger.debug("{}h composite: removed {}", windowHours, granuleId);
+            }
+        }
+
+        for (String granuleId : rebuild ? List.copyOf(wanted.keySet()) : toAdd) {
+            LevelThreeGrid grid = loader.load(pathsById.get(granuleId));
+            if (sum == null) {
+                lats = grid.lats();
+                lons = grid.lons();
+                sum = new double[grid.values().length];
+                count = new int[grid.values().length];
+            } else if (grid.rows() != lats.length || grid.cols() != lons.length) {
+                logger.warn("{}h composite: skipping {} with mismatched grid {} x {}", windowHours, granuleId, grid.rows(), grid.cols());
+                continue;
+            }
+            accumulate(grid, 1);
+            included.put(granuleId, wanted.get(granuleId));
+            logger.debug("{}h composite: added {}", windowHours, granuleId);
+        }
+
+        snapshot = buildSnapshot();
+        logger.info("{}h composite now covers {} granules", windowHours, included.size());
+        return true;
+    }
+
+    /**
+     * @return the mean grid and its metadata as of the last completed update, or null if no granules have been
+     *         folded in yet
+     */
+    public Snapshot snapshot() {
+        return snapshot;
+    }
+
+    private Snapshot buildSnapshot() {
+        if (included.isEmpty()) {
+            return null;
+        }
+
+        long start = System.currentTimeMillis();
+
+        double[] mean = new double[sum.length];
+        IntStream.range(0, lats.length).parallel().forEach(i -> {
+            int rowOffset = i * lons.length;
+            for (int j = 0; j < lons.length; j++) {
+                int k = rowOffset + j;
+                mean[k] = count[k] > 0 ? sum[k] / count[k] : LevelThreeGrid.INVALID_VALUE;
+            }
+        });
+
+        Instant newest = included.values().stream().max(Instant::compareTo).orElse(null);
+        LevelThreeGrid meanGrid = new LevelThreeGrid("composite-" + windowHours + "h", lats, lons, mean,
+                (float[]) null, (byte[]) null, sketchBins);
+
+        logger.debug("{}h composite snapshot built in {} ms", windowHours, System.currentTimeMillis() - start);
+        return new Snapshot(meanGrid, windowHours, included.size(), newest);
+    }
+
+    private void accumulate(LevelThreeGrid grid, int sign) {
+        double[] values = grid.values();
+        int cols = grid.cols();
+        IntStream.range(0, grid.rows()).parallel().forEach(i -> {
+            int rowOffset = i * cols;
+            for (int j = 0; j < cols; j++) {
+                int k = rowOffset + j;
+                double v = values[k];
+                if (LevelThreeGrid.isValid(v)) {
+                    count[k] += sign;
+                    // Reset to exactly zero when the last contribution leaves, so subtraction can't drift
+                    sum[k] = count[k] == 0 ? 0 : sum[k] + sign * v;
+                }
+            }
+        });
+    }
+
+    private void reset() {
+        lats = null;
+        lons = null;
+        sum = null;
+        count = null;
+        included.clear();
+    }
+
+    /**
+     * Writes the state to {@code file} via a temporary file and an atomic rename, so a crash mid-write never leaves
+     * a truncated checkpoint behind.
+     */
+    public synchronized void checkpoint(Path file) throws IOException {
+        if (sum == null) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new DeflaterOutputStream(Files.newOutputStream(temp), new Deflater(Deflater.BEST_SPEED)), 1 << 20))) {
+            out.writeInt(CHECKPOINT_MAGIC);
+            out.writeInt(CHECKPOINT_VERSION);
+            out.writeInt(windowHours);
+
+            out.writeInt(included.size());
+            for (Map.Entry<String, Instant> entry : included.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue().toEpochMilli());
+            }
+
+            out.writeInt(lats.length);
+            for (float lat : lats) {
+                out.writeFloat(lat);
+            }
+            out.writeInt(lons.length);
+            for (float lon : lons) {
+                out.writeFloat(lon);
+            }
+            for (int k = 0; k < sum.length; k++) {
+                out.writeInt(count[k]);
+                if (count[k] != 0) {
+                    out.writeDouble(sum[k]);
+                }
+            }
+        }
+
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.debug("{}h composite checkpointed to {} in {} ms", windowHours, file, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Restores state written by {@link #checkpoint(Path)}. A missing, unreadable or mismatched checkpoint leaves the
+     * composite empty so it is rebuilt from the catalog.
+     */
+    public synchronized void restore(Path file) {
+        if (!Files.exists(file)) {
+            return;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new InflaterInputStream(Files.newInputStream(file)), 1 << 20))) {
+            if (in.readInt() != CHECKPOINT_MAGIC || in.readInt() != CHECKPOINT_VERSION || in.readInt() != windowHours) {
+                logger.warn("Ignoring incompatible composite checkpoint {}", file);
+                return;
+            }
+
+            Map<String, Instant> restored = new LinkedHashMap<>();
+            int granules = in.readInt();
+            for (int g = 0; g < granules; g++) {
+                restored.put(in.readUTF(), Instant.ofEpochMilli(in.readLong()));
+            }
+
+            float[] restoredLats = new float[in.readInt()];
+            for (int i = 0; i < restoredLats.length; i++) {
+                restoredLats[i] = in.readFloat();
+            }
+            float[] restoredLons = new float[in.readInt()];
+            for (int j = 0; j < restoredLons.length; j++) {
+                restoredLons[j] = in.readFloat();
+            }
+
+            int cells = restoredLats.length * restoredLons.length;
+            double[] restoredSum = new double[cells];
+            int[] restoredCount = new int[cells];
+            for (int k = 0; k < cells; k++) {
+                restoredCount[k] = in.readInt();
+                if (restoredCount[k] != 0) {
+                    restoredSum[k] = in.readDouble();
+                }
+            }
+
+            reset();
+            lats = restoredLats;
+            lons = restoredLons;
+            sum = restoredSum;
+            count = restoredCount;
+            included.putAll(restored);
+            snapshot = buildSnapshot();
+            logger.info("{}h composite restored from {} with {} granules", windowHours, file, included.size());
+        } catch (IOException e) {
+            logger.warn("Failed to restore composite checkpoint {}: {}", file, e.getMessage());
+            reset();
+        }
+    }
+
+}
@@ -0,0 +1,113 @@
+package org.chrisbarbati.spaceapps2025backend.levelthreedata;
+
+import java.util.stream.IntStream;
+
+/**
+ * Coarse summary of a grid in {@value #TILE_SIZE} x {@value #TILE_SIZE} blocks: the number of valid cells and their
+ * min/max. Large parts of a TEMPO granule are fill (ocean edges, night side, cloud masks), so scans use this to skip
+ * empty blocks outright and to treat fully valid blocks without per-cell checks.
+ */
+public final class LevelThreeTileIndex {
+
+    public static final int TILE_SIZE = 64;
+
+    private final int rows;
+    private final int cols;
+    private final int tileRows;
+    private final int tileCols;
+    private final int[] validCounts;
+    private final double[] mins;
+    private final double[] maxs;
+
+    private LevelThreeTileIndex(int rows, int cols) {
+        this.rows = rows;
+        this.cols = cols;
+        this.tileRows = (rows + TILE_SIZE - 1) / TILE_SIZE;
+        this.tileCols = (cols + TILE_SIZE - 1) / TILE_SIZE;
+        this.validCounts = new int[tileRows * tileCols];
+        this.mins = new double[tileRows * tileCols];
+        this.maxs = new double[tileRows * tileCols];
+    }
+
+    public static LevelThreeTileIndex build(int rows, int cols, double[] values) {
+        LevelThreeTileIndex index = new LevelThreeTileIndex(rows, cols);
+
+        // Each tile row is independent, so build them in parallel
+        IntStream.range(0, index.tileRows).parallel().forEach(tr -> {
+            int r0 = tr * TILE_SIZE;
+            int r1 = Math.min(r0 + TILE_SIZE, rows);
+            for (int tc = 0; tc < index.tileCols; tc++) {
+                int c0 = tc * TILE_SIZE;
+                int c1 = Math.min(c0 + TILE_SIZE, cols);
+
+                int count = 0;
+                double min = Double.POSITIVE_INFINITY;
+                double max = Double.NEGATIVE_INFINITY;
+                for (int i = r0; i < r1; i++) {
+                    int rowOffset = i * cols;
+                    for (int j = c0; j < c1; j++) {
+                        double v = values[rowOffset + j];
+                        if (LevelThreeGrid.isValid(v)) {
+                            count++;
+                            if (v < min) min = v;
+                            if (v > max) max = v;
+                        }
+                    }
+                }
+
+                int t = tr * index.tileCols + tc;
+                index.validCounts[t] = count;
+                index.mins[t] = min;
+                index.maxs[t] = max;
+            }
+        });
+
+        return index;
+    }
+
+    public int tileRows() {
+        return tileRows;
+    }
+
+    public int tileCols() {
+        return tileCols;
+    }
+
+    public int validCount(int tileRow, int tileCol) {
+        return validCounts[tileRow * tileCols + tileCol];
+    }
+
+    public double min(int tileRow, int tileCol) {
+        return mins[tileRow * tileCols + tileCol];
+    }
+
+    public double max(int tileRow, int tileCol) {
+        return maxs[tileRow * tileCols + tileCol];
+    }
+
+    public boolean isEmpty(int tileRow, int tileCol) {
+        return validCount(tileRow, tileCol) == 0;
+    }
+
+    public boolean isFull(int tileRow, int tileCol) {
+        return validCount(tileRow, tileCol) == cellCount(tileRow, tileCol);
+    }
+
+    /**
+     * Number of grid cells in the tile; tiles on the last row/column may be smaller than {@value #TILE_SIZE}.
+     */
+    public int cellCount(int tileRow, int tileCol) {
+        int height = Math.min(TILE_SIZE, rows - tileRow * TILE_SIZE);
+        int width = Math.min(TILE_SIZE, cols - tileCol * TILE_SIZE);
+        return height * width;
+    }
+
+    public long totalValidCount() {
+        long total = 0;
+        for (int count : validCounts) {
+            total += count;
+        }
+        return total;
+    }
+
+}
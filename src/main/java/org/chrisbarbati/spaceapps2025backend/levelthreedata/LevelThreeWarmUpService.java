@@ -0,0 +1,136 @@
+package org.chrisbarbati.spaceapps2025backend.levelthreedata;
+
+import org.chrisbarbati.spaceapps2025backend.GranulesAddedEvent;
+import org.slf4j.*;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Optionally decodes the newest granules and renders them at the default full-grid scale, so the first requests after
+ * a deploy hit warm caches. Runs once, at startup if granules are already on disk and otherwise after the first
+ * ingest; the node reports itself as not ready until this has finished.
+ */
+@Service
+public class LevelThreeWarmUpService {
+
+    //Logging
+    private static final Logger logger = LoggerFactory.getLogger(LevelThreeWarmUpService.class);
+
+    //Injected dependencies
+    private final LevelThreeGranuleCatalog levelThreeGranuleCatalog;
+    private final LevelThreeGridCache levelThreeGridCache;
+    private final LevelThreeRetrievalService levelThreeRetrievalService;
+
+    private final boolean enabled;
+    private final int granules;
+    private final int parallelism;
+    private final int scaleFactor;
+
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    private final AtomicInteger warmedGranules = new AtomicInteger();
+    private volatile boolean warm;
+    private volatile long warmUpMillis;
+
+    public LevelThreeWarmUpService(
+            LevelThreeGranuleCatalog levelThreeGranuleCatalog,
+            LevelThreeGridCache levelThreeGridCache,
+            LevelThreeRetrievalService levelThreeRetrievalService,
+            @Value("${levelthree.warmup.enabled}") boolean enabled,
+            @Value("${levelthree.warmup.granules}") int granules,
+            @Value("${levelthree.warmup.parallelism}") int parallelism,
+            @Value("${levelthree.warmup.scale-factor}") int scaleFactor) {
+        this.levelThreeGranuleCatalog = levelThreeGranuleCatalog;
+        this.levelThreeGridCache = levelThreeGridCache;
+        this.levelThreeRetrievalService = levelThreeRetrievalService;
+        this.enabled = enabled;
+        this.granules = granules;
+        this.parallelism = parallelism;
+        this.scaleFactor = scaleFactor;
+        this.warm = !enabled;
+    }
+
+    public boolean isWarm() {
+        return warm;
+    }
+
+    public int warmedGranules() {
+        return warmedGranules.get();
+    }
+
+    public long warmUpMillis() {
+        return warmUpMillis;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            if (!levelThreeGranuleCatalog.getTempoFiles().isEmpty()) {
+                start();
+                return;
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.error("Failed to list level three granules for warm-up: {}", e.getMessage());
+        }
+        // Readiness stays down until the first download has something to warm
+        logger.info("No level three granules yet; warm-up waits for the first ingest");
+    }
+
+    @EventListener
+    public void onGranulesAdded(GranulesAddedEvent event) {
+        start();
+    }
+
+    private void start() {
+        if (enabled && started.compareAndSet(false, true)) {
+            Thread.ofVirtual().name("level-three-warm-up").start(this::warmUp);
+        }
+    }
+
+    private void warmUp() {
+        long start = System.currentTimeMillis();
+
+        // Each decoded grid is large, so only a few are read at once
+        try (ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, parallelism))) {
+            List<String> newest = levelThreeGranuleCatalog.getTempoFiles().stream().limit(granules).toList();
+            logger.info("Warming up {} level three granules", newest.size());
+
+            CompletableFuture.allOf(newest.stream()
+                    .map(path -> CompletableFuture.runAsync(() -> warmUp(path), executor))
+                    .toArray(CompletableFuture[]::new))
+                    .join();
+        } catch (IOException | RuntimeException e) {
+            logger.error("Level three warm-up failed: {}", e.getMessage(), e);
+        }
+
+        warmUpMillis = System.currentTimeMillis() - start;
+        // Readiness is granted even after failures; a cold node is still better than none
+        warm = true;
+        logger.info("Level three warm-up finished: {} granules in {} ms", warmedGranules, warmUpMillis);
+    }
+
+    private void warmUp(String path) {
+        try {
+            // Decodes the grid and builds its tile index and percentile sketch
+            levelThreeGridCache.get(path);
+            levelThreeRetrievalService.retrieveFullDownscaled(path, scaleFactor, LevelThreeQualityFilter.NONE, LevelThreeProjection.NATIVE);
+            warmedGranules.incrementAndGet();
+            logger.debug("Warmed up {}", path);
+        } catch (IOException | RuntimeException e) {
+            logger.error("Failed to warm up {}: {}", path, e.getMessage());
+        }
+    }
+
+}
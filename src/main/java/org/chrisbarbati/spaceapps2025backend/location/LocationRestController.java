@@ -0,0 +1,38 @@
+package org.chrisbarbati.spaceapps2025backend.location;
+
+import org.slf4j.*;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.concurrent.CompletableFuture;
+
+@RestController
+@RequestMapping("/api/location")
+public class LocationRestController {
+
+    //Logging
+    private static final Logger logger = LoggerFactory.getLogger(LocationRestController.class);
+
+    //Injected dependencies
+    private final LocationSummaryService locationSummaryService;
+
+    public LocationRestController(LocationSummaryService locationSummaryService) {
+        this.locationSummaryService = locationSummaryService;
+    }
+
+    @GetMapping("/retrieve")
+    public CompletableFuture<ResponseEntity<LocationSummaryResponse>> retrieve(
+            @RequestParam("lat") float lat,
+            @RequestParam("lon") float lon,
+            @RequestParam(value = "radius", defaultValue = "0.5") float radius
+    ) {
+        logger.info("Retrieving location summary");
+
+        return locationSummaryService.retrieve(lat, lon, radius)
+                .thenApply(ResponseEntity::ok);
+    }
+
+}
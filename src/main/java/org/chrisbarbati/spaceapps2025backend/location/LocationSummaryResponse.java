@@ -0,0 +1,23 @@
+package org.chrisbarbati.spaceapps2025backend.location;
+
+import org.chrisbarbati.spaceapps2025backend.groundbased.apiresponse.AirQualityResponse;
+import org.chrisbarbati.spaceapps2025backend.levelthreedata.LevelThreeDataResponse;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Everything a location card needs in one response. A source that failed or timed out is left null and its
+ * reason is reported in {@code errors} under the source name.
+ */
+public record LocationSummaryResponse(
+        Instant generatedAtInstant,
+        Float lat,
+        Float lon,
+        Float radius,
+        AirQualityResponse current,
+        AirQualityResponse forecast,
+        LevelThreeDataResponse levelThree,
+        Map<String, String> errors
+) {
+}
@@ -0,0 +1,140 @@
+package org.chrisbarbati.spaceapps2025backend.location;
+
+import org.chrisbarbati.spaceapps2025backend.groundbased.apiresponse.AirQualityResponse;
+import org.chrisbarbati.spaceapps2025backend.groundbased.service.GroundBasedAirQualityService;
+import org.chrisbarbati.spaceapps2025backend.levelthreedata.LevelThreeAdmissionControl;
+import org.chrisbarbati.spaceapps2025backend.levelthreedata.LevelThreeBoundingBox;
+import org.chrisbarbati.spaceapps2025backend.levelthreedata.LevelThreeData;
+import org.chrisbarbati.spaceapps2025backend.levelthreedata.LevelThreeDataResponse;
+import org.chrisbarbati.spaceapps2025backend.levelthreedata.LevelThreeProjection;
+import org.chrisbarbati.spaceapps2025backend.levelthreedata.LevelThreeQualityFilter;
+import org.chrisbarbati.spaceapps2025backend.levelthreedata.LevelThreeRetrievalService;
+import org.slf4j.*;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+@Service
+public class LocationSummaryService {
+
+    //Logging
+    private static final Logger logger = LoggerFactory.getLogger(LocationSummaryService.class);
+
+    //Injected dependencies
+    private final GroundBasedAirQualityService groundBasedAirQualityService;
+    private final LevelThreeRetrievalService levelThreeRetrievalService;
+    private final LevelThreeAdmissionControl levelThreeAdmissionControl;
+    private final Duration sourceTimeout;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    // A timed-out caller leaves its render running, so later requests for the same region join it instead of
+    // starting another; the granule decode underneath is already shared per granule by the grid cache
+    private final Map<LevelThreeBoundingBox, CompletableFuture<LevelThreeData>> levelThreeInFlight = new ConcurrentHashMap<>();
+
+    public LocationSummaryService(
+            GroundBasedAirQualityService groundBasedAirQualityService,
+            LevelThreeRetrievalService levelThreeRetrievalService,
+            LevelThreeAdmissionControl levelThreeAdmissionControl,
+            @Value("${location.source-timeout}") Duration sourceTimeout) {
+        this.groundBasedAirQualityService = groundBasedAirQualityService;
+        this.levelThreeRetrievalService = levelThreeRetrievalService;
+        this.levelThreeAdmissionControl = levelThreeAdmissionControl;
+        this.sourceTimeout = sourceTimeout;
+    }
+
+    /**
+     * Gathers the current reading, the noon forecast and the TEMPO NO2 data around the point concurrently, so the
+     * response takes as long as the slowest source rather than the sum of all three.
+     */
+    public CompletableFuture<LocationSummaryResponse> retrieve(float lat, float lon, float radius) {
+        logger.info("Retrieving location summary for {}, {} with radius {}", lat, lon, radius);
+
+        float lat1 = lat - radius;
+        float lat2 = lat + radius;
+        float lon1 = lon - radius;
+        float lon2 = lon + radius;
+
+        Map<String, String> errors = new ConcurrentHashMap<>();
+
+        CompletableFuture<AirQualityResponse> current = bounded("current",
+                groundBasedAirQualityService.getAirQualityAsync(lat, lon), errors);
+
+        CompletableFuture<AirQualityResponse> forecast = bounded("forecast",
+                groundBasedAirQualityService.getAirQualityForecastAsync(lat, lon), errors);
+
+        CompletableFuture<LevelThreeDataResponse> levelThree = bounded("levelThree",
+                retrieveLevelThree(new LevelThreeBoundingBox(lat1, lat2, lon1, lon2))
+                        .thenApply(data -> mapToDataResponse(data, lat1, lat2, lon1, lon2)),
+                errors);
+
+        return CompletableFuture.allOf(current, forecast, levelThree)
+                .thenApply(ignored -> new LocationSummaryResponse(
+                        Instant.now(),
+                        lat,
+                        lon,
+                        radius,
+                        current.join(),
+                        forecast.join(),
+                        levelThree.join(),
+                        Map.copyOf(errors)
+                ));
+    }
+
+    /**
+     * Renders the region under the same admission control as the level three endpoints; a rejection shows up as a
+     * levelThree error entry like any other failure.
+     */
+    private CompletableFuture<LevelThreeData> retrieveLevelThree(LevelThreeBoundingBox box) {
+        CompletableFuture<LevelThreeData> future = levelThreeInFlight.computeIfAbsent(box, b -> CompletableFuture.supplyAsync(
+                () -> levelThreeAdmissionControl.runAdmitted("locationSummary", 1, levelThreeAdmissionControl.regionPixels(b),
+                        levelThreeAdmissionControl.decodesForLatest(1),
+                        () -> levelThreeRetrievalService.retrieveLatest(b.lat1(), b.lat2(), b.lon1(), b.lon2(), LevelThreeQualityFilter.NONE, LevelThreeProjection.NATIVE)),
+                executor));
+        future.whenComplete((data, e) -> levelThreeInFlight.remove(box, future));
+        return future;
+    }
+
+    /**
+     * Applies the per-source timeout and turns a failure into a null result plus an error entry. The source future
+     * is copied first because the ground-based futures are shared with other callers through the cache.
+     */
+    private <T> CompletableFuture<T> bounded(String source, CompletableFuture<T> future, Map<String, String> errors) {
+        return future.copy()
+                .orTimeout(sourceTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                .exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    String message = cause instanceof TimeoutException
+                            ? "Timed out after " + sourceTimeout.toMillis() + " ms"
+                            : String.valueOf(cause.getMessage());
+                    logger.warn("Location source {} failed: {}", source, message);
+                    errors.put(source, message);
+                    return null;
+                });
+    }
+
+    private LevelThreeDataResponse mapToDataResponse(LevelThreeData data, float lat1, float lat2, float lon1, float lon2) {
+        return new LevelThreeDataResponse(
+                Instant.now(),
+                lat1,
+                lat2,
+                lon1,
+                lon2,
+                data.minNO2(),
+                data.maxNO2(),
+                data.centerNO2(),
+                data.imageBase64()
+        );
+    }
+
+}
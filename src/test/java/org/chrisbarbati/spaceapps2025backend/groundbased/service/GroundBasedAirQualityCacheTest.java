@@ -0,0 +1,183 @@
+package org.chrisbarbati.spaceapps2025backend.groundbased.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class GroundBasedAirQualityCacheTest {
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @AfterEach
+    void shutDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void snapsNearbyCoordinatesToOneCell() {
+        GroundBasedAirQualityCache<String> cache = cache(Duration.ofHours(1), Duration.ZERO, 10, cell -> "v");
+
+        assertThat(cache.cellFor(43.651, -79.383)).isEqualTo(cache.cellFor(43.699, -79.301));
+        assertThat(cache.cellFor(43.651, -79.383)).isNotEqualTo(cache.cellFor(43.751, -79.383));
+        assertThat(cache.cellFor(43.651, -79.383).centerLat()).isEqualTo(43.65);
+        assertThat(cache.cellFor(43.651, -79.383).centerLon()).isEqualTo(-79.35);
+    }
+
+    @Test
+    void coalescesConcurrentMissesIntoOneLoad() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        GroundBasedAirQualityCache<String> cache = cache(Duration.ofHours(1), Duration.ZERO, 10, cell -> {
+            await(release);
+            return "value";
+        });
+
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(cache.getAsync(43.61 + i * 0.001, -79.39));
+        }
+        release.countDown();
+
+        for (CompletableFuture<String> future : futures) {
+            assertThat(future.get(5, TimeUnit.SECONDS)).isEqualTo("value");
+        }
+        assertThat(loads).hasValue(1);
+
+        // Now cached, so no further upstream calls
+        assertThat(cache.get(43.62, -79.39)).isEqualTo("value");
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void servesStaleValueWhileRevalidating() throws Exception {
+        CountDownLatch refreshStarted = new CountDownLatch(1);
+        CountDownLatch releaseRefresh = new CountDownLatch(1);
+        GroundBasedAirQualityCache<String> cache = cache(Duration.ZERO, Duration.ofHours(1), 10, cell -> {
+            if (loads.get() == 1) {
+                return "first";
+            }
+            refreshStarted.countDown();
+            await(releaseRefresh);
+            return "second";
+        });
+
+        assertThat(cache.get(10, 10)).isEqualTo("first");
+
+        // Past the TTL but inside the stale window: the old value comes back straight away
+        CompletableFuture<String> stale = cache.getAsync(10, 10);
+        assertThat(stale).isCompletedWithValue("first");
+        assertThat(refreshStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // Further reads during the refresh don't start another one
+        assertThat(cache.getAsync(10, 10)).isCompletedWithValue("first");
+        assertThat(loads).hasValue(2);
+
+        releaseRefresh.countDown();
+        awaitValue(cache, "second");
+    }
+
+    @Test
+    void reloadsOnceStaleWindowHasPassed() {
+        GroundBasedAirQualityCache<String> cache = cache(Duration.ZERO, Duration.ZERO, 10, cell -> "v" + loads.get());
+
+        assertThat(cache.get(10, 10)).isEqualTo("v1");
+        assertThat(cache.get(10, 10)).isEqualTo("v2");
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void evictsOldestEntriesOverMaxEntries() {
+        GroundBasedAirQualityCache<String> cache = cache(Duration.ofHours(1), Duration.ZERO, 2, cell -> "v");
+
+        cache.get(10, 10);
+        cache.get(20, 20);
+        cache.get(30, 30);
+
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(loads).hasValue(3);
+
+        // The newest two are still cached, the oldest has to be loaded again
+        cache.get(20, 20);
+        cache.get(30, 30);
+        assertThat(loads).hasValue(3);
+        cache.get(10, 10);
+        assertThat(loads).hasValue(4);
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedEntry() {
+        GroundBasedAirQualityCache<String> cache = cache(Duration.ofHours(1), Duration.ZERO, 2, cell -> "v");
+
+        cache.get(10, 10);
+        cache.get(20, 20);
+        // Reading the first cell again makes the second the least recently used
+        cache.get(10, 10);
+        cache.get(30, 30);
+        assertThat(loads).hasValue(3);
+
+        cache.get(10, 10);
+        assertThat(loads).hasValue(3);
+        cache.get(20, 20);
+        assertThat(loads).hasValue(4);
+    }
+
+    @Test
+    void rejectsMaxEntriesBelowOne() {
+        assertThatThrownBy(() -> cache(Duration.ofHours(1), Duration.ZERO, 0, cell -> "v"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> cache(Duration.ofHours(1), Duration.ZERO, -1, cell -> "v"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void failedLoadsAreNotCached() {
+        GroundBasedAirQualityCache<String> cache = cache(Duration.ofHours(1), Duration.ZERO, 10, cell -> {
+            if (loads.get() == 1) {
+                throw new IllegalStateException("upstream down");
+            }
+            return "recovered";
+        });
+
+        assertThatThrownBy(() -> cache.get(10, 10)).isInstanceOf(IllegalStateException.class).hasMessage("upstream down");
+        assertThat(cache.size()).isZero();
+        assertThat(cache.get(10, 10)).isEqualTo("recovered");
+    }
+
+    private GroundBasedAirQualityCache<String> cache(Duration ttl, Duration stale, int maxEntries,
+                                                     Function<GroundBasedAirQualityCache.GridCell, String> loader) {
+        return new GroundBasedAirQualityCache<>("Test", 0.1, ttl, stale, maxEntries, cell -> {
+            loads.incrementAndGet();
+            return loader.apply(cell);
+        }, executor);
+    }
+
+    private static void awaitValue(GroundBasedAirQualityCache<String> cache, String expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!expected.equals(cache.getAsync(10, 10).getNow(null)) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(cache.getAsync(10, 10).getNow(null)).isEqualTo(expected);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,92 @@
+package org.chrisbarbati.spaceapps2025backend.groundbased.service;
+
+import org.chrisbarbati.spaceapps2025backend.groundbased.apiresponse.AirQualityResponse;
+import org.chrisbarbati.spaceapps2025backend.groundbased.batch.BatchAirQualityResult;
+import org.chrisbarbati.spaceapps2025backend.groundbased.batch.BatchCoordinate;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestClient;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.client.ExpectedCount.once;
+import static org.springframework.test.web.client.ExpectedCount.times;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.queryParam;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+/**
+ * Runs the service against a stubbed OpenWeather endpoint to check what actually goes upstream.
+ */
+class GroundBasedAirQualityServiceTest {
+
+    private static final String BODY = """
+            {"coord":{"lon":-79.35,"lat":43.65},"list":[{"dt":1760875200,"main":{"aqi":2}}]}
+            """;
+
+    private static final int BATCH_MAX_CONCURRENCY = 2;
+
+    private MockRestServiceServer server;
+    private GroundBasedAirQualityService service;
+
+    @BeforeEach
+    void setUp() {
+        RestClient.Builder builder = RestClient.builder().baseUrl("http://openweather.test/air_pollution");
+        server = MockRestServiceServer.bindTo(builder).build();
+        service = new GroundBasedAirQualityService(builder.build(), "key", 0.1, 100,
+                Duration.ofMinutes(10), Duration.ofMinutes(50), Duration.ofHours(1), Duration.ofHours(2), BATCH_MAX_CONCURRENCY);
+    }
+
+    @Test
+    void nearbyLookupsShareOneUpstreamCallForTheCellCentre() {
+        server.expect(once(), method(HttpMethod.GET))
+                .andExpect(queryParam("lat", "43.65"))
+                .andExpect(queryParam("lon", "-79.35"))
+                .andExpect(queryParam("appid", "key"))
+                .andRespond(withSuccess(BODY, MediaType.APPLICATION_JSON));
+
+        AirQualityResponse first = service.getAirQuality(43.651, -79.383);
+        AirQualityResponse second = service.getAirQuality(43.699, -79.301);
+
+        assertThat(second).isSameAs(first);
+        assertThat(first.getCoord().getLat()).isEqualTo(43.65);
+        server.verify();
+    }
+
+    @Test
+    void concurrentBatchesShareTheUpstreamConcurrencyLimit() {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        server.expect(times(12), method(HttpMethod.GET))
+                .andRespond(request -> {
+                    maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                    try {
+                        Thread.sleep(50);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    inFlight.decrementAndGet();
+                    return withSuccess(BODY, MediaType.APPLICATION_JSON).createResponse(request);
+                });
+
+        // Two batches of distinct cells, so every lookup goes upstream
+        List<CompletableFuture<List<BatchAirQualityResult>>> batches = IntStream.range(0, 2)
+                .mapToObj(b -> service.getAirQualityBatch(IntStream.range(0, 6)
+                        .mapToObj(i -> new BatchCoordinate(10 + b, 10 + i))
+                        .toList(), false))
+                .toList();
+
+        batches.forEach(batch -> assertThat(batch.join()).hasSize(6).allMatch(result -> result.error() == null));
+        assertThat(maxInFlight.get()).isBetween(1, BATCH_MAX_CONCURRENCY);
+        server.verify();
+    }
+
+}
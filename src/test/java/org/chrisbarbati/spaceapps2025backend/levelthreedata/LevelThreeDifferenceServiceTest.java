@@ -0,0 +1,55 @@
+package org.chrisbarbati.spaceapps2025backend.levelthreedata;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class LevelThreeDifferenceServiceTest {
+
+    private final LevelThreeGranuleCatalog catalog = mock(LevelThreeGranuleCatalog.class);
+    private final LevelThreeGridCache gridCache = mock(LevelThreeGridCache.class);
+    private final LevelThreeArtifactCache artifactCache = mock(LevelThreeArtifactCache.class);
+
+    private final LevelThreeDifferenceService service = new LevelThreeDifferenceService(catalog, gridCache, artifactCache);
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, -1})
+    void rejectsScaleFactorBelowOne(int scaleFactor) {
+        assertThatThrownBy(() -> service.retrieveDifference("20251004T120000", "20251004T130000", null, scaleFactor))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST));
+
+        verifyNoInteractions(catalog, gridCache, artifactCache);
+    }
+
+    @Test
+    void stampsEachResponseWithItsOwnGenerationTime() throws Exception {
+        when(catalog.findByTimestamp("20251004T120000")).thenReturn(Optional.of("TEMPO_NO2_L3_V03_20251004T120000Z_S001.nc"));
+        when(catalog.findByTimestamp("20251004T130000")).thenReturn(Optional.of("TEMPO_NO2_L3_V03_20251004T130000Z_S002.nc"));
+        LevelThreeDifferenceResponse cached = new LevelThreeDifferenceResponse(null, null, null, null, null, null, null,
+                2, 0, 0.0, 0.0, 0.0, 1.0, "");
+        when(artifactCache.getOrCompute(any(), eq("difference"), any(), eq(LevelThreeDifferenceResponse.class), any()))
+                .thenReturn(cached);
+
+        Instant before = Instant.now();
+        LevelThreeDifferenceResponse response = service.retrieveDifference("20251004T120000", "20251004T130000", null, 2);
+
+        assertThat(response.generatedAtInstant()).isBetween(before, Instant.now());
+        assertThat(response.withGeneratedAt(null)).isEqualTo(cached);
+        verifyNoInteractions(gridCache);
+    }
+
+}
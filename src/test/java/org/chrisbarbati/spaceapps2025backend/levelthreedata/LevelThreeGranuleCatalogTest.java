@@ -0,0 +1,68 @@
+package org.chrisbarbati.spaceapps2025backend.levelthreedata;
+
+import org.chrisbarbati.spaceapps2025backend.PythonScheduler;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
+
+class LevelThreeGranuleCatalogTest {
+
+    @TempDir
+    Path dir;
+
+    private String kept;
+    private String expired;
+    private LevelThreeGranuleCatalog catalog;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        kept = Files.createFile(dir.resolve("TEMPO_NO2_L3_V03_20251004T130000Z_S002.nc")).toString();
+        expired = Files.createFile(dir.resolve("TEMPO_NO2_L3_V03_20251004T120000Z_S001.nc")).toString();
+
+        PythonScheduler pythonScheduler = mock(PythonScheduler.class);
+        when(pythonScheduler.getTempoDataDir()).thenReturn(dir);
+        catalog = spy(new LevelThreeGranuleCatalog(pythonScheduler));
+        catalog.refresh();
+    }
+
+    @Test
+    void retireDuringARefreshIsNotUndone() throws Exception {
+        // Retention retires a granule after the rescan has listed the directory but before it is swapped in
+        doAnswer(invocation -> {
+            Object scanned = invocation.callRealMethod();
+            catalog.retire(List.of(expired));
+            return scanned;
+        }).when(catalog).scan();
+
+        List<String> refreshed = catalog.refresh();
+
+        assertThat(refreshed).contains(kept).doesNotContain(expired);
+        assertThat(catalog.getTempoFiles()).contains(kept).doesNotContain(expired);
+    }
+
+    @Test
+    void refreshAfterRetireKeepsTheGranuleOut() throws Exception {
+        catalog.retire(List.of(expired));
+        assertThat(catalog.getTempoFiles()).contains(kept).doesNotContain(expired);
+
+        catalog.refresh();
+        assertThat(catalog.getTempoFiles()).contains(kept).doesNotContain(expired);
+
+        // Once forgotten, the file is only listed again if it is still on disk
+        Files.delete(Path.of(expired));
+        catalog.forget(List.of(expired));
+        catalog.refresh();
+        assertThat(catalog.getTempoFiles()).contains(kept).doesNotContain(expired);
+    }
+
+}
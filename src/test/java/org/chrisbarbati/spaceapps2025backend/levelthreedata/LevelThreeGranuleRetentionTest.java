@@ -0,0 +1,103 @@
+package org.chrisbarbati.spaceapps2025backend.levelthreedata;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.chrisbarbati.spaceapps2025backend.GranulesAddedEvent;
+import org.chrisbarbati.spaceapps2025backend.GranulesRemovedEvent;
+import org.chrisbarbati.spaceapps2025backend.PythonScheduler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class LevelThreeGranuleRetentionTest {
+
+    @TempDir
+    Path dir;
+
+    private Path kept;
+    private Path expired;
+    private LevelThreeGranuleCatalog catalog;
+    private final ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+    private LevelThreeGranuleRetention retention;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Path tempoData = Files.createDirectories(dir.resolve("python_runner_current").resolve("tempo_data"));
+        kept = Files.createFile(tempoData.resolve("TEMPO_NO2_L3_V03_20251004T130000Z_S002.nc"));
+        expired = Files.createFile(tempoData.resolve("TEMPO_NO2_L3_V03_20251004T120000Z_S001.nc"));
+
+        PythonScheduler pythonScheduler = mock(PythonScheduler.class);
+        when(pythonScheduler.getTempoDataDir()).thenReturn(tempoData);
+        catalog = new LevelThreeGranuleCatalog(pythonScheduler);
+        catalog.refresh();
+
+        // Every granule but the newest is past max-age
+        retention = new LevelThreeGranuleRetention(pythonScheduler, catalog, eventPublisher, new SimpleMeterRegistry(),
+                true, Duration.ofHours(1), DataSize.ofGigabytes(1), Duration.ofMillis(300));
+    }
+
+    @AfterEach
+    void tearDown() {
+        retention.shutdown();
+    }
+
+    @Test
+    void aSecondRunDuringTheGracePeriodDoesNotDeleteAgain() throws Exception {
+        retention.onGranulesAdded(new GranulesAddedEvent(List.of(kept)));
+        awaitCondition(() -> catalog.isRetired(expired.toString()));
+
+        retention.onGranulesAdded(new GranulesAddedEvent(List.of(kept)));
+        awaitCondition(() -> !catalog.isRetired(expired.toString()));
+        // Leaves time for a second deletion, were one scheduled, to finish
+        Thread.sleep(500);
+
+        assertThat(expired).doesNotExist();
+        assertThat(kept).exists();
+        assertThat(retention.lastReport().filesDeleted()).isEqualTo(1);
+        verify(eventPublisher, times(1)).publishEvent(any(GranulesRemovedEvent.class));
+    }
+
+    @Test
+    void startupDeletesRunnerDirectoriesLeftByEarlierRuns() throws Exception {
+        Path orphan = Files.createDirectories(dir.resolve("python_runner_previous").resolve("tempo_data"));
+        Path orphanGranule = Files.createFile(orphan.resolve("TEMPO_NO2_L3_V03_20251003T120000Z_S001.nc"));
+        Path active = Files.createDirectories(dir.resolve("python_runner_other").resolve("tempo_data"));
+        FileTime old = FileTime.from(Instant.now().minus(Duration.ofDays(1)));
+        for (Path path : List.of(orphanGranule, orphan, orphan.getParent())) {
+            Files.setLastModifiedTime(path, old);
+        }
+
+        retention.onApplicationReady();
+        awaitCondition(() -> Files.notExists(orphan.getParent()));
+
+        assertThat(active).exists();
+        assertThat(kept).exists();
+    }
+
+    private static void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+
+}
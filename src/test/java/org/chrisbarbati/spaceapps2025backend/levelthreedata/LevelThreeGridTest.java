@@ -0,0 +1,51 @@
+package org.chrisbarbati.spaceapps2025backend.levelthreedata;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LevelThreeGridTest {
+
+    private final float[] lats = {10f, 11f};
+    private final float[] lons = {20f, 21f, 22f};
+    private final double[] values = {1, 2, 3, 4, 5, 6};
+
+    @Test
+    void qualityLayersAreReadOnceOnFirstUse() {
+        AtomicInteger uncertaintyReads = new AtomicInteger();
+        AtomicInteger flagReads = new AtomicInteger();
+        LevelThreeGrid grid = new LevelThreeGrid("granule", lats, lons, values,
+                () -> {
+                    uncertaintyReads.incrementAndGet();
+                    return new float[6];
+                },
+                () -> {
+                    flagReads.incrementAndGet();
+                    return null;
+                },
+                LevelThreeQuantileSketch.DEFAULT_BINS);
+
+        assertThat(uncertaintyReads).hasValue(0);
+        assertThat(flagReads).hasValue(0);
+
+        new LevelThreeQualityFilter(null, 0.5).maskFor(grid);
+        new LevelThreeQualityFilter(null, 0.5).maskFor(grid);
+        assertThat(uncertaintyReads).hasValue(1);
+        assertThat(flagReads).hasValue(0);
+
+        assertThat(grid.qualityFlags()).isNull();
+        assertThat(grid.qualityFlags()).isNull();
+        assertThat(flagReads).hasValue(1);
+    }
+
+    @Test
+    void rejectsQualityLayersOfTheWrongSize() {
+        LevelThreeGrid grid = new LevelThreeGrid("granule", lats, lons, values, new float[5], null, LevelThreeQuantileSketch.DEFAULT_BINS);
+
+        assertThatThrownBy(grid::uncertainty).isInstanceOf(IllegalArgumentException.class);
+    }
+
+}
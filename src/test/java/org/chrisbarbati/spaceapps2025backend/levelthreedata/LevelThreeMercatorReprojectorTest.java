@@ -0,0 +1,64 @@
+package org.chrisbarbati.spaceapps2025backend.levelthreedata;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LevelThreeMercatorReprojectorTest {
+
+    private static final LevelThreeMercatorReprojector.PixelBlender UNUSED = (row0, row1, x, weight) -> {
+        throw new AssertionError("Nearest sampling must not blend");
+    };
+
+    private final LevelThreeMercatorReprojector reprojector = new LevelThreeMercatorReprojector(8);
+
+    @Test
+    void axesOfTheSameLengthGetTheirOwnTables() {
+        int[] pixels = new int[50];
+        Arrays.fill(pixels, 0xFF00FF00);
+
+        int[] low = reprojector.reproject(pixels, 1, 50, axis(0f, 0.2f, 50), 0, 1, LevelThreeProjection.Interpolation.NEAREST, UNUSED);
+        int[] high = reprojector.reproject(pixels, 1, 50, axis(60f, 0.2f, 50), 0, 1, LevelThreeProjection.Interpolation.NEAREST, UNUSED);
+
+        // Mercator stretches rows more the further they are from the equator
+        assertThat(high.length).isGreaterThan(low.length);
+        assertThat(reprojector.reproject(pixels, 1, 50, axis(0f, 0.2f, 50), 0, 1, LevelThreeProjection.Interpolation.NEAREST, UNUSED))
+                .hasSameSizeAs(low);
+    }
+
+    @Test
+    void bilinearLeavesOpaquePairsToTheBlenderAndSkipsFill() {
+        int opaque = 0xFF102030;
+        // North-up, two columns: the northern pixel of the second column is fill
+        int[] pixels = {
+                opaque, 0,
+                opaque, opaque,
+                opaque, opaque};
+
+        int[] out = reprojector.reproject(pixels, 2, 3, axis(50f, 1f, 3), 0, 1, LevelThreeProjection.Interpolation.BILINEAR,
+                (row0, row1, x, weight) -> blended(row0, row1));
+
+        int height = out.length / 2;
+        for (int y = 0; y < height; y++) {
+            assertThat(out[y * 2]).isIn(blended(2, 1), blended(1, 0));
+            assertThat(out[y * 2 + 1]).isIn(blended(2, 1), 0, opaque);
+        }
+        assertThat(out[1]).isZero();
+        assertThat(out[(height - 1) * 2 + 1]).isEqualTo(blended(2, 1));
+    }
+
+    private static int blended(int row0, int row1) {
+        return 0xFF000000 | row0 << 8 | row1;
+    }
+
+    private static float[] axis(float first, float spacing, int length) {
+        float[] lats = new float[length];
+        for (int i = 0; i < length; i++) {
+            lats[i] = first + i * spacing;
+        }
+        return lats;
+    }
+
+}
@@ -0,0 +1,25 @@
+package org.chrisbarbati.spaceapps2025backend.levelthreedata;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LevelThreeProjectionTest {
+
+    @Test
+    void nativeProjectionIgnoresInterpolation() {
+        LevelThreeProjection requested = new LevelThreeProjection(LevelThreeProjection.Type.NATIVE, LevelThreeProjection.Interpolation.BILINEAR);
+
+        assertThat(requested).isEqualTo(LevelThreeProjection.NATIVE);
+        assertThat(requested.hashCode()).isEqualTo(LevelThreeProjection.NATIVE.hashCode());
+    }
+
+    @Test
+    void mercatorKeepsItsInterpolation() {
+        LevelThreeProjection bilinear = new LevelThreeProjection(LevelThreeProjection.Type.MERCATOR, LevelThreeProjection.Interpolation.BILINEAR);
+
+        assertThat(bilinear.interpolation()).isEqualTo(LevelThreeProjection.Interpolation.BILINEAR);
+        assertThat(bilinear).isNotEqualTo(new LevelThreeProjection(LevelThreeProjection.Type.MERCATOR, LevelThreeProjection.Interpolation.NEAREST));
+    }
+
+}
@@ -0,0 +1,37 @@
+package org.chrisbarbati.spaceapps2025backend.levelthreedata;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LevelThreeQualityFilterTest {
+
+    private static final float UNCERTAINTY_FILL = -1.0E30f;
+
+    private final LevelThreeGrid grid = new LevelThreeGrid("granule",
+            new float[] {10f}, new float[] {20f, 21f, 22f, 23f},
+            new double[] {10, 10, 10, LevelThreeGrid.INVALID_VALUE},
+            new float[] {1f, 9f, UNCERTAINTY_FILL, 1f},
+            new byte[] {0, 2, 0, 0},
+            LevelThreeQuantileSketch.DEFAULT_BINS);
+
+    @Test
+    void uncertaintyLimitRejectsLooseAndFilledCells() {
+        LevelThreeQualityFilter.Mask mask = new LevelThreeQualityFilter(null, 0.5).maskFor(grid);
+
+        assertThat(mask.accepts(0)).isTrue();
+        assertThat(mask.accepts(1)).isFalse();
+        assertThat(mask.accepts(2)).isFalse();
+        assertThat(mask.accepts(3)).isFalse();
+    }
+
+    @Test
+    void qualityFlagLimitIgnoresUncertainty() {
+        LevelThreeQualityFilter.Mask mask = new LevelThreeQualityFilter(1, null).maskFor(grid);
+
+        assertThat(mask.accepts(0)).isTrue();
+        assertThat(mask.accepts(1)).isFalse();
+        assertThat(mask.accepts(2)).isTrue();
+    }
+
+}
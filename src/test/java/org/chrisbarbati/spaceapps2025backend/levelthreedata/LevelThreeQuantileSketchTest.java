@@ -0,0 +1,150 @@
+package org.chrisbarbati.spaceapps2025backend.levelthreedata;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LevelThreeQuantileSketchTest {
+
+    private static final double MAX_RELATIVE_ERROR = 0.01;
+
+    private final LevelThreeGrid grid = structuredGrid(640, 760, LevelThreeQuantileSketch.DEFAULT_BINS);
+
+    @Test
+    void estimatesAreWithinTheErrorBoundOfTheExactPercentiles() {
+        Random random = new Random(7);
+        int estimated = 0;
+        for (int n = 0; n < 300; n++) {
+            LevelThreeGrid.IndexRange rows = randomRange(random, grid.rows());
+            LevelThreeGrid.IndexRange cols = randomRange(random, grid.cols());
+
+            double[] estimate = grid.quantileSketch().estimate(grid, rows, cols, 0.05, 0.95, MAX_RELATIVE_ERROR);
+            if (estimate == null) {
+                continue;
+            }
+            estimated++;
+
+            double[] exact = exactPercentiles(grid, rows, cols);
+            double tolerance = MAX_RELATIVE_ERROR * (estimate[1] - estimate[0]);
+            assertThat(estimate[0]).as("5th percentile of %s x %s", rows, cols).isCloseTo(exact[0], org.assertj.core.data.Offset.offset(tolerance));
+            assertThat(estimate[1]).as("95th percentile of %s x %s", rows, cols).isCloseTo(exact[1], org.assertj.core.data.Offset.offset(tolerance));
+        }
+        assertThat(estimated).isPositive();
+    }
+
+    @Test
+    void regionalWindowsMostlyAvoidTheExactFallback() {
+        // Windows of 3 to 8 tiles a side: the regional views the sketch is meant to speed up
+        Random random = new Random(11);
+        int estimated = 0;
+        int windows = 200;
+        for (int n = 0; n < windows; n++) {
+            int height = (3 + random.nextInt(6)) * LevelThreeTileIndex.TILE_SIZE;
+            int width = (3 + random.nextInt(6)) * LevelThreeTileIndex.TILE_SIZE;
+            LevelThreeGrid.IndexRange rows = new LevelThreeGrid.IndexRange(random.nextInt(grid.rows() - height), height);
+            LevelThreeGrid.IndexRange cols = new LevelThreeGrid.IndexRange(random.nextInt(grid.cols() - width), width);
+            if (grid.quantileSketch().estimate(grid, rows, cols, 0.05, 0.95, MAX_RELATIVE_ERROR) != null) {
+                estimated++;
+            }
+        }
+        assertThat(estimated).isGreaterThanOrEqualTo(windows * 9 / 10);
+    }
+
+    @Test
+    void windowsInsideOneTileAreExact() {
+        LevelThreeGrid.IndexRange rows = new LevelThreeGrid.IndexRange(70, 40);
+        LevelThreeGrid.IndexRange cols = new LevelThreeGrid.IndexRange(130, 50);
+
+        double[] estimate = grid.quantileSketch().estimate(grid, rows, cols, 0.05, 0.95, 0);
+
+        assertThat(estimate).containsExactly(exactPercentiles(grid, rows, cols));
+    }
+
+    @Test
+    void fallsBackWhenTheBinsAreTooCoarse() {
+        LevelThreeGrid coarse = structuredGrid(640, 760, 2);
+        LevelThreeGrid.IndexRange rows = new LevelThreeGrid.IndexRange(0, 640);
+        LevelThreeGrid.IndexRange cols = new LevelThreeGrid.IndexRange(0, 760);
+
+        assertThat(coarse.quantileSketch().estimate(coarse, rows, cols, 0.05, 0.95, MAX_RELATIVE_ERROR)).isNull();
+        assertThat(coarse.quantileSketch().estimate(coarse, rows, cols, 0.05, 0.95, 1)).isNotNull();
+    }
+
+    @Test
+    void fallsBackForFillOnlyAndConstantWindows() {
+        float[] lats = new float[128];
+        float[] lons = new float[128];
+        double[] values = new double[128 * 128];
+        Arrays.fill(values, 0, 64 * 128, LevelThreeGrid.INVALID_VALUE);
+        Arrays.fill(values, 64 * 128, values.length, 3e15);
+        LevelThreeGrid flat = new LevelThreeGrid("flat", lats, lons, values);
+
+        LevelThreeGrid.IndexRange all = new LevelThreeGrid.IndexRange(0, 128);
+        assertThat(flat.quantileSketch().estimate(flat, new LevelThreeGrid.IndexRange(0, 64), all, 0.05, 0.95, 1)).isNull();
+        assertThat(flat.quantileSketch().estimate(flat, all, all, 0.05, 0.95, 1)).isNull();
+    }
+
+    static double[] exactPercentiles(LevelThreeGrid grid, LevelThreeGrid.IndexRange rows, LevelThreeGrid.IndexRange cols) {
+        double[] valid = new double[rows.count() * cols.count()];
+        int size = 0;
+        for (int i = rows.first(); i < rows.end(); i++) {
+            for (int j = cols.first(); j < cols.end(); j++) {
+                double v = grid.value(i, j);
+                if (LevelThreeGrid.isValid(v)) {
+                    valid[size++] = v;
+                }
+            }
+        }
+        Arrays.sort(valid, 0, size);
+        return new double[] {valid[(int) (size * 0.05)], valid[(int) (size * 0.95)]};
+    }
+
+    private static LevelThreeGrid.IndexRange randomRange(Random random, int length) {
+        int first = random.nextInt(length - 1);
+        return new LevelThreeGrid.IndexRange(first, 1 + random.nextInt(length - first - 1));
+    }
+
+    /**
+     * NO2-like field: a smooth background gradient with a few plumes, measurement noise, scattered fill and a
+     * fill-only band, so regional windows have a much narrower spread than the whole grid.
+     */
+    static LevelThreeGrid structuredGrid(int rows, int cols, int sketchBins) {
+        float[] lats = new float[rows];
+        float[] lons = new float[cols];
+        for (int i = 0; i < rows; i++) {
+            lats[i] = 20f + i * 0.02f;
+        }
+        for (int j = 0; j < cols; j++) {
+            lons[j] = -120f + j * 0.02f;
+        }
+
+        Random random = new Random(3);
+        double[][] plumes = new double[8][];
+        for (int p = 0; p < plumes.length; p++) {
+            plumes[p] = new double[] {random.nextInt(rows), random.nextInt(cols), 10 + random.nextInt(40), 2e15 + random.nextDouble() * 2e16};
+        }
+
+        double[] values = new double[rows * cols];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                double v;
+                if ((i >= 200 && i < 260) || random.nextDouble() < 0.05) {
+                    v = LevelThreeGrid.INVALID_VALUE;
+                } else {
+                    v = 1e15 + 4e15 * j / cols + random.nextGaussian() * 3e14;
+                    for (double[] plume : plumes) {
+                        double di = (i - plume[0]) / plume[2];
+                        double dj = (j - plume[1]) / plume[2];
+                        v += plume[3] * Math.exp(-(di * di + dj * dj) / 2);
+                    }
+                }
+                values[i * cols + j] = v;
+            }
+        }
+        return new LevelThreeGrid("structured", lats, lons, values, (float[]) null, (byte[]) null, sketchBins);
+    }
+
+}
@@ -0,0 +1,42 @@
+package org.chrisbarbati.spaceapps2025backend.levelthreedata;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+class LevelThreeRestControllerTest {
+
+    private final LevelThreeRetrievalService retrievalService = mock(LevelThreeRetrievalService.class);
+    private final LevelThreeCompositeService compositeService = mock(LevelThreeCompositeService.class);
+    private final LevelThreeAdmissionControl admissionControl = mock(LevelThreeAdmissionControl.class);
+
+    private final LevelThreeRestController controller = new LevelThreeRestController(retrievalService, compositeService,
+            mock(LevelThreeDifferenceService.class), mock(LevelThreeContourService.class), admissionControl);
+
+    @Test
+    void rejectsNonPositiveN() {
+        assertBadRequest(() -> controller.retrieveN(40f, 45f, -80f, -75f, -1, null, null, "native", "nearest"));
+        assertBadRequest(() -> controller.retrieveNFull(-1, 10, null, null, "native", "nearest"));
+        assertBadRequest(() -> controller.retrieveNFull(0, 10, null, null, "native", "nearest"));
+    }
+
+    @Test
+    void rejectsNonPositiveScaleFactor() {
+        assertBadRequest(() -> controller.retrieveFull(0, null, null, "native", "nearest"));
+        assertBadRequest(() -> controller.retrieveNFull(2, -3, null, null, "native", "nearest"));
+        assertBadRequest(() -> controller.retrieveCompositeFull(24, 0, "native", "nearest"));
+    }
+
+    private void assertBadRequest(Runnable request) {
+        assertThatThrownBy(request::run)
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST));
+        verifyNoInteractions(retrievalService, compositeService, admissionControl);
+    }
+
+}
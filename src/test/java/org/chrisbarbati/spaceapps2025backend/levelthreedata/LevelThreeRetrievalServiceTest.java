@@ -0,0 +1,195 @@
+package org.chrisbarbati.spaceapps2025backend.levelthreedata;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.ArgumentCaptor;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks the tile-walking renderer against a straightforward full scan of every cell, which is how the service
+ * rendered before the tile index existed, and which renders go through the artifact cache.
+ */
+class LevelThreeRetrievalServiceTest {
+
+    private static final int ROWS = 400;
+    private static final int COLS = 390;
+
+    private final LevelThreeGrid grid = syntheticGrid();
+    private final LevelThreeRetrievalService service = new LevelThreeRetrievalService(null, null, null, null, false, 0.01, LevelThreeQuantileSketch.DEFAULT_BINS, 1);
+
+    @Test
+    void regionRendersMatchFullScan() throws IOException {
+        int[][] windows = {
+                {0, ROWS, 0, COLS},       // whole grid: partial edge tiles, and the extreme tiles clamp to one colour
+                {10, 50, 10, 50},         // inside one tile
+                {50, 140, 60, 200},       // crosses several tile edges
+                {64, 128, 0, 128},        // exactly the all-fill tiles
+                {70, 100, 5, 90},         // all fill, not tile aligned
+                {100, ROWS, 64, COLS},    // extreme tiles plus enough ordinary cells that they still clamp
+                {192, 256, 128, 256},     // only the extreme tiles
+                {350, ROWS, 330, COLS},   // partial tiles in the corner
+                {0, 1, 0, COLS},          // single row
+        };
+
+        for (int[] window : windows) {
+            LevelThreeBoundingBox box = boxFor(window[0], window[1], window[2], window[3]);
+            LevelThreeData actual = service.renderRegion(grid, box, LevelThreeProjection.NATIVE);
+            Reference expected = referenceRender(window[0], window[1], window[2], window[3], 1);
+
+            assertThat(actual.minNO2()).as("min for %s", box).isEqualTo(expected.min());
+            assertThat(actual.maxNO2()).as("max for %s", box).isEqualTo(expected.max());
+            assertThat(actual.centerNO2()).as("centre for %s", box)
+                    .isEqualTo(grid.value(window[0] + (window[1] - window[0]) / 2, window[2] + (window[3] - window[2]) / 2));
+            assertThat(decode(actual.imageBase64())).as("pixels for %s", box).isEqualTo(expected.pixels());
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3, 7, 64, 100})
+    void downscaledRendersMatchFullScan(int scaleFactor) throws IOException {
+        LevelThreeData actual = service.renderFullDownscaled(grid, scaleFactor, LevelThreeProjection.NATIVE);
+        Reference expected = referenceRender(0, ROWS, 0, COLS, scaleFactor);
+
+        assertThat(actual.minNO2()).isEqualTo(expected.min());
+        assertThat(actual.maxNO2()).isEqualTo(expected.max());
+        assertThat(decode(actual.imageBase64())).isEqualTo(expected.pixels());
+    }
+
+    @Test
+    void regionsBypassTheArtifactCacheAndFullRendersKeyOnSketchBins() throws Exception {
+        String path = "TEMPO_NO2_L3_V03_20251004T120000Z_S001.nc";
+        LevelThreeGranuleCatalog catalog = mock(LevelThreeGranuleCatalog.class);
+        LevelThreeGridCache gridCache = mock(LevelThreeGridCache.class);
+        LevelThreeArtifactCache artifactCache = mock(LevelThreeArtifactCache.class);
+        when(catalog.getTempoFiles()).thenReturn(List.of(path));
+        when(gridCache.get(path)).thenReturn(grid);
+        when(artifactCache.getOrCompute(any(), any(), any(), any(), any()))
+                .thenAnswer(invocation -> invocation.<LevelThreeArtifactCache.ArtifactLoader<?>>getArgument(4).load());
+
+        LevelThreeRetrievalService cached = new LevelThreeRetrievalService(catalog, gridCache, null, artifactCache, false, 0.01, 64, 1);
+
+        cached.retrieveLatestBatch(List.of(boxFor(10, 50, 10, 50), boxFor(50, 140, 60, 200)), LevelThreeQualityFilter.NONE, LevelThreeProjection.NATIVE);
+        verifyNoInteractions(artifactCache);
+
+        cached.retrieveLatestFullDownscaled(4, LevelThreeQualityFilter.NONE, LevelThreeProjection.NATIVE);
+        ArgumentCaptor<Object> params = ArgumentCaptor.forClass(Object.class);
+        verify(artifactCache).getOrCompute(eq(LevelThreeGranuleCatalog.granuleIdOf(path)), eq("full"), params.capture(), eq(LevelThreeData.class), any());
+        assertThat(new ObjectMapper().writeValueAsString(params.getValue())).contains("\"sketchBins\":64");
+    }
+
+    private record Reference(double min, double max, int[] pixels) {}
+
+    /**
+     * Renders rows [r0, r1) and columns [c0, c1) sampled every {@code step} cells by visiting every sample, with no
+     * tile index and no sketch.
+     */
+    private Reference referenceRender(int r0, int r1, int c0, int c1, int step) {
+        List<Double> validValues = new ArrayList<>();
+        for (int i = r0; i < r1; i += step) {
+            for (int j = c0; j < c1; j += step) {
+                double v = grid.value(i, j);
+                if (LevelThreeGrid.isValid(v)) {
+                    validValues.add(v);
+                }
+            }
+        }
+        validValues.sort(Double::compareTo);
+        int size = validValues.size();
+        double min = size > 0 ? validValues.get((int) (size * 0.05)) : 0;
+        double max = size > 0 ? validValues.get((int) (size * 0.95)) : 1;
+
+        int height = (r1 - r0 + step - 1) / step;
+        int width = (c1 - c0 + step - 1) / step;
+        int[] pixels = new int[width * height];
+        for (int i = r0; i < r1; i += step) {
+            for (int j = c0; j < c1; j += step) {
+                double v = grid.value(i, j);
+                if (LevelThreeGrid.isValid(v)) {
+                    pixels[(height - 1 - (i - r0) / step) * width + (j - c0) / step] = color(v, min, max);
+                }
+            }
+        }
+        return new Reference(min, max, pixels);
+    }
+
+    private static int color(double no2Value, double min, double max) {
+        double normalized = (no2Value - min) / (max - min);
+        if (normalized < 0) normalized = 0;
+        if (normalized > 1) normalized = 1;
+
+        int red, green, blue = 0;
+        if (normalized < 0.5) {
+            red = (int) (normalized * 2 * 255);
+            green = 255;
+        } else {
+            red = 255;
+            green = (int) ((1 - (normalized - 0.5) * 2) * 255);
+        }
+        return (LevelThreeImages.ALPHA << 24) | (red << 16) | (green << 8) | blue;
+    }
+
+    private static int[] decode(String base64Png) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(Base64.getDecoder().decode(base64Png)));
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+
+    private LevelThreeBoundingBox boxFor(int r0, int r1, int c0, int c1) {
+        return new LevelThreeBoundingBox(grid.lats()[r0] - 0.001f, grid.lats()[r1 - 1] + 0.001f,
+                grid.lons()[c0] - 0.001f, grid.lons()[c1 - 1] + 0.001f);
+    }
+
+    /**
+     * Random NO2-like values with scattered fill, a block of all-fill tiles and fully valid tiles far below and
+     * above the rest, so every branch of the tile walk is exercised.
+     */
+    static LevelThreeGrid syntheticGrid() {
+        float[] lats = new float[ROWS];
+        float[] lons = new float[COLS];
+        for (int i = 0; i < ROWS; i++) {
+            lats[i] = 20f + i * 0.02f;
+        }
+        for (int j = 0; j < COLS; j++) {
+            lons[j] = -120f + j * 0.02f;
+        }
+
+        Random random = new Random(42);
+        double[] values = new double[ROWS * COLS];
+        for (int i = 0; i < ROWS; i++) {
+            for (int j = 0; j < COLS; j++) {
+                double v;
+                if (i >= 64 && i < 128 && j < 128) {
+                    v = LevelThreeGrid.INVALID_VALUE;
+                } else if (i >= 192 && i < 256 && j >= 128 && j < 192) {
+                    v = 1e13 + random.nextDouble() * 1e12;
+                } else if (i >= 192 && i < 256 && j >= 192 && j < 256) {
+                    v = 1e17 + random.nextDouble() * 1e16;
+                } else if (random.nextDouble() < 0.1) {
+                    v = LevelThreeGrid.INVALID_VALUE;
+                } else {
+                    v = 1e15 + random.nextDouble() * 1e16;
+                }
+                values[i * COLS + j] = v;
+            }
+        }
+        return new LevelThreeGrid("synthetic", lats, lons, values);
+    }
+
+}
@@ -0,0 +1,112 @@
+package org.chrisbarbati.spaceapps2025backend.levelthreedata;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LevelThreeRollingCompositeTest {
+
+    private static final String FIRST = "TEMPO_NO2_L3_V03_20251004T120000Z_S001.nc";
+    private static final String SECOND = "TEMPO_NO2_L3_V03_20251004T130000Z_S002.nc";
+    private static final String THIRD = "TEMPO_NO2_L3_V03_20251004T150000Z_S004.nc";
+
+    private final Map<String, LevelThreeGrid> grids = Map.of(
+            FIRST, grid(FIRST, 1, 2),
+            SECOND, grid(SECOND, 3, LevelThreeGrid.INVALID_VALUE),
+            THIRD, grid(THIRD, 5, 6));
+
+    @Test
+    void addsNewGranulesAndSubtractsExpiredOnes() throws Exception {
+        LevelThreeRollingComposite composite = new LevelThreeRollingComposite(3, LevelThreeQuantileSketch.DEFAULT_BINS);
+
+        assertThat(composite.update(List.of(SECOND, FIRST), grids::get)).isTrue();
+        LevelThreeRollingComposite.Snapshot snapshot = composite.snapshot();
+        assertThat(snapshot.granuleCount()).isEqualTo(2);
+        assertThat(snapshot.meanGrid().values()).containsExactly(2, 2);
+
+        // FIRST is now more than three hours older than the newest granule
+        assertThat(composite.update(List.of(THIRD, SECOND, FIRST), grids::get)).isTrue();
+        snapshot = composite.snapshot();
+        assertThat(snapshot.granuleCount()).isEqualTo(2);
+        assertThat(snapshot.meanGrid().values()).containsExactly(4, 6);
+
+        assertThat(composite.update(List.of(THIRD, SECOND, FIRST), grids::get)).isFalse();
+        assertThat(composite.snapshot()).isSameAs(snapshot);
+    }
+
+    @Test
+    void snapshotDoesNotWaitForARunningUpdate() throws Exception {
+        LevelThreeRollingComposite composite = new LevelThreeRollingComposite(3, LevelThreeQuantileSketch.DEFAULT_BINS);
+        composite.update(List.of(FIRST), grids::get);
+        LevelThreeRollingComposite.Snapshot before = composite.snapshot();
+
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Boolean> update = CompletableFuture.supplyAsync(() -> {
+            try {
+                return composite.update(List.of(SECOND, FIRST), path -> {
+                    loading.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                    return grids.get(path);
+                });
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        assertThat(loading.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<LevelThreeRollingComposite.Snapshot> read = CompletableFuture.supplyAsync(composite::snapshot);
+        assertThat(read.get(1, TimeUnit.SECONDS)).isSameAs(before);
+
+        release.countDown();
+        assertThat(update.get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(composite.snapshot().granuleCount()).isEqualTo(2);
+    }
+
+    @Test
+    void restoredSumsSurviveAnUpdateWithoutTheirGranules(@TempDir Path dir) throws Exception {
+        Path checkpoint = dir.resolve("composite-3h.bin");
+        LevelThreeRollingComposite before = new LevelThreeRollingComposite(3, LevelThreeQuantileSketch.DEFAULT_BINS);
+        before.update(List.of(FIRST), grids::get);
+        before.checkpoint(checkpoint);
+
+        // After a restart FIRST is no longer on disk, only granules downloaded since
+        LevelThreeRollingComposite.GridLoader afterRestart = path -> {
+            if (path.equals(FIRST)) {
+                throw new IOException("No such file: " + path);
+            }
+            return grids.get(path);
+        };
+        LevelThreeRollingComposite composite = new LevelThreeRollingComposite(3, LevelThreeQuantileSketch.DEFAULT_BINS);
+        composite.restore(checkpoint);
+        assertThat(composite.snapshot().granuleCount()).isEqualTo(1);
+
+        assertThat(composite.update(List.of(SECOND), afterRestart)).isTrue();
+        assertThat(composite.snapshot().granuleCount()).isEqualTo(2);
+        assertThat(composite.snapshot().meanGrid().values()).containsExactly(2, 2);
+
+        // Once FIRST expires it can't be subtracted, so the sums are rebuilt from the listed granules
+        assertThat(composite.update(List.of(THIRD, SECOND), afterRestart)).isTrue();
+        assertThat(composite.snapshot().granuleCount()).isEqualTo(2);
+        assertThat(composite.snapshot().meanGrid().values()).containsExactly(4, 6);
+    }
+
+    private static LevelThreeGrid grid(String path, double west, double east) {
+        return new LevelThreeGrid(LevelThreeGranuleCatalog.granuleIdOf(path),
+                new float[] {40f}, new float[] {-80f, -79f}, new double[] {west, east});
+    }
+
+}
@@ -0,0 +1,50 @@
+package org.chrisbarbati.spaceapps2025backend.levelthreedata;
+
+import org.chrisbarbati.spaceapps2025backend.GranulesAddedEvent;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class LevelThreeWarmUpServiceTest {
+
+    private static final String GRANULE = "TEMPO_NO2_L3_V03_20251004T120000Z_S001.nc";
+
+    private final LevelThreeGranuleCatalog catalog = mock(LevelThreeGranuleCatalog.class);
+    private final LevelThreeGridCache gridCache = mock(LevelThreeGridCache.class);
+    private final LevelThreeRetrievalService retrievalService = mock(LevelThreeRetrievalService.class);
+
+    private final LevelThreeWarmUpService service = new LevelThreeWarmUpService(catalog, gridCache, retrievalService, true, 4, 1, 8);
+
+    @Test
+    void waitsForTheFirstIngestWhenStartedWithoutGranules() throws Exception {
+        when(catalog.getTempoFiles()).thenReturn(List.of());
+        service.onApplicationReady();
+        assertThat(service.isWarm()).isFalse();
+
+        when(catalog.getTempoFiles()).thenReturn(List.of(GRANULE));
+        service.onGranulesAdded(new GranulesAddedEvent(List.of(Path.of(GRANULE))));
+        awaitWarm();
+        assertThat(service.warmedGranules()).isEqualTo(1);
+
+        // Later ingests don't warm up again
+        service.onGranulesAdded(new GranulesAddedEvent(List.of(Path.of(GRANULE))));
+        verify(gridCache, times(1)).get(GRANULE);
+    }
+
+    private void awaitWarm() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!service.isWarm() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(service.isWarm()).isTrue();
+    }
+
+}
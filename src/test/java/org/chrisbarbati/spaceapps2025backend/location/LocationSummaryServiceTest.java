@@ -0,0 +1,68 @@
+package org.chrisbarbati.spaceapps2025backend.location;
+
+import org.chrisbarbati.spaceapps2025backend.groundbased.service.GroundBasedAirQualityService;
+import org.chrisbarbati.spaceapps2025backend.levelthreedata.LevelThreeAdmissionControl;
+import org.chrisbarbati.spaceapps2025backend.levelthreedata.LevelThreeData;
+import org.chrisbarbati.spaceapps2025backend.levelthreedata.LevelThreeRetrievalService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyFloat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class LocationSummaryServiceTest {
+
+    private final GroundBasedAirQualityService groundBasedAirQualityService = mock(GroundBasedAirQualityService.class);
+    private final LevelThreeRetrievalService levelThreeRetrievalService = mock(LevelThreeRetrievalService.class);
+    private final LevelThreeAdmissionControl levelThreeAdmissionControl = mock(LevelThreeAdmissionControl.class);
+    private final CountDownLatch releaseRender = new CountDownLatch(1);
+
+    private LocationSummaryService service;
+
+    @BeforeEach
+    void setUp() {
+        when(groundBasedAirQualityService.getAirQualityAsync(anyDouble(), anyDouble())).thenReturn(CompletableFuture.completedFuture(null));
+        when(groundBasedAirQualityService.getAirQualityForecastAsync(anyDouble(), anyDouble())).thenReturn(CompletableFuture.completedFuture(null));
+        when(levelThreeRetrievalService.retrieveLatest(anyFloat(), anyFloat(), anyFloat(), anyFloat(), any(), any())).thenAnswer(invocation -> {
+            releaseRender.await(5, TimeUnit.SECONDS);
+            return new LevelThreeData(1, 2, 3, "png");
+        });
+        when(levelThreeAdmissionControl.runAdmitted(anyString(), anyInt(), anyLong(), anyInt(), any()))
+                .thenAnswer(invocation -> invocation.<Supplier<?>>getArgument(4).get());
+        service = new LocationSummaryService(groundBasedAirQualityService, levelThreeRetrievalService, levelThreeAdmissionControl, Duration.ofMillis(100));
+    }
+
+    @Test
+    void timedOutRequestsShareOneLevelThreeRender() throws Exception {
+        LocationSummaryResponse first = service.retrieve(43.65f, -79.38f, 0.5f).get(5, TimeUnit.SECONDS);
+        LocationSummaryResponse second = service.retrieve(43.65f, -79.38f, 0.5f).get(5, TimeUnit.SECONDS);
+
+        assertThat(first.errors()).containsKey("levelThree");
+        assertThat(second.errors()).containsKey("levelThree");
+
+        // Joins the render the timed-out requests left running rather than starting another
+        CompletableFuture<LocationSummaryResponse> third = service.retrieve(43.65f, -79.38f, 0.5f);
+        releaseRender.countDown();
+
+        assertThat(third.get(5, TimeUnit.SECONDS).errors()).isEmpty();
+        verify(levelThreeRetrievalService, times(1)).retrieveLatest(anyFloat(), anyFloat(), anyFloat(), anyFloat(), any(), any());
+        verify(levelThreeAdmissionControl, times(1)).runAdmitted(eq("locationSummary"), eq(1), anyLong(), anyInt(), any());
+    }
+
+}